@@ -0,0 +1,124 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Write and recovery cost of the cash register's balance journal: one balance change with a commit
+ * (and its fsync) every {@code batch} changes, and the recovery of a journal of ten million changes.
+ */
+@Fork(1)
+public class BalanceJournalBenchmark {
+
+    @State(Scope.Thread)
+    public static class Appending {
+        @Param({"1", "64", "1024"})
+        public int batch;
+
+        @Param({"10000"})
+        public int customers;
+
+        Path directory;
+        BalanceJournal journal;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("balance-journal");
+            journal = BalanceJournal.open(new BalanceJournal.Settings(directory, batch, Integer.MAX_VALUE), 0);
+            // every customer is in the journal already, as after a warm-up
+            for (int customer = 1; customer <= customers; customer++) {
+                journal.balanceChanged(customer, 0);
+            }
+            journal.commit();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            journal.close();
+            delete(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Recovering {
+        @Param({"10000000"})
+        public int events;
+
+        @Param({"10000"})
+        public int customers;
+
+        Path directory;
+        BalanceJournal.Settings settings;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("balance-journal");
+            // no snapshot, so every recovery replays all events
+            settings = new BalanceJournal.Settings(directory, 1024, Integer.MAX_VALUE);
+            try (BalanceJournal journal = BalanceJournal.open(settings, 0)) {
+                for (int i = 0; i < events; i++) {
+                    journal.balanceChanged(i % customers + 1, i / customers);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            delete(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public int balanceChange(Appending state) throws IOException {
+        int id = state.next;
+        state.next = id + 1 == state.customers ? 0 : id + 1;
+        state.journal.balanceChanged(id + 1, id);
+        if (state.journal.uncommitted() >= state.batch) {
+            state.journal.commit();
+        }
+        return id;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public long recover(Recovering state) throws IOException {
+        try (BalanceJournal journal = BalanceJournal.open(state.settings, 0)) {
+            return journal.recoveredEvents();
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup cost of the cash register's balance store, i.e. the work done by
+ * {@code CashRegister.onRecharge} and {@code CashRegister.onState} apart from messaging, without and with the
+ * ranking the query API needs, and the cost of reading the ten highest balances for {@code CashRegister.onGetTotals}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BalanceStoreBenchmark {
+
+    @Param({"4", "10000", "1000000"})
+    public int customers;
+
+    @Param({"false", "true"})
+    public boolean ranked;
+
+    private BalanceStore store;
+    private int next;
+    private final int[] topCustomers = new int[10];
+    private final int[] topBalances = new int[10];
+
+    @Setup
+    public void setup() {
+        store = new BalanceStore(16, ranked);
+        for (int customer = 1; customer <= customers; customer++) {
+            store.add(customer, 1_000_000);
+        }
+    }
+
+    private int nextCustomer() {
+        next = next == customers ? 1 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public int recharge() {
+        return store.add(nextCustomer(), 1);
+    }
+
+    @Benchmark
+    public boolean state() {
+        return store.tryDebit(nextCustomer());
+    }
+
+    @Benchmark
+    public int top() {
+        return ranked ? store.top(topCustomers, topBalances) : 0;
+    }
+}
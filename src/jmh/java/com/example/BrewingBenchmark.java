@@ -0,0 +1,31 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.typed.Behavior;
+import org.openjdk.jmh.annotations.Param;
+
+import java.time.Duration;
+
+/**
+ * The coffee cycle of {@link CoffeePipelineBenchmark} with machines which brew in batches: every machine
+ * brews up to {@code batchSize} cups per cycle of {@code brewMillis}, so an order waits in the machine's
+ * queue until its cycle is done. Compares batch sizes at the same brew rate per machine and shows what
+ * the queueing costs in latency.
+ */
+public class BrewingBenchmark extends CoffeePipelineBenchmark {
+
+    /** cups per brew cycle; the cycle grows with the batch so every machine brews 100 cups per second */
+    @Param({"1", "4", "16"})
+    public int batchSize;
+
+    @Param({"10"})
+    public double brewMillisPerCup;
+
+    @Override
+    protected Behavior<CoffeeMachine.Request> coffeeMachine() {
+        Duration brewDuration = Duration.ofNanos((long) (batchSize * brewMillisPerCup * 1_000_000));
+        return CoffeeMachine.create(Integer.MAX_VALUE, Duration.ZERO, brewDuration, batchSize);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.Behaviors;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ceiling of the cash register router: a burst of recharges for many customers, sent through the router or
+ * straight to the shard owning each customer, until every recharge is answered. All requests pass the one
+ * mailbox of the router, so with {@code direct = false} the shards together cannot take more requests than
+ * the router forwards, however many cores they have; {@code direct = true} is what callers which pick the
+ * shard themselves would get.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashRegisterRouterBenchmark {
+
+    private static final int BURST = 10_000;
+
+    @Param({"1", "4"})
+    public int shards;
+
+    /** true sends every request to the shard of the customer, false through the router */
+    @Param({"false", "true"})
+    public boolean direct;
+
+    private ActorTestKit testKit;
+    private ActorRef<CashRegister.Request> router;
+    private ActorRef<CashRegister.Request>[] shardRefs;
+    private ActorRef<Customer.Response> replies;
+    private volatile CountDownLatch answered;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        testKit = ActorTestKit.create("CashRegisterRouterBenchmark", ConfigFactory.parseString(
+                "akka.loglevel = WARNING\ncoffee.metrics.enabled = off").withFallback(ConfigFactory.load()));
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        ((Logger) LoggerFactory.getLogger("com.example")).setLevel(Level.WARN);
+        router = testKit.spawn(CashRegisterRouter.create(shards, null, Duration.ofMinutes(1)));
+        shardRefs = new ActorRef[shards];
+        for (int i = 0; i < shards; i++) {
+            shardRefs[i] = testKit.spawn(CashRegister.create(Duration.ofMinutes(1)));
+        }
+        replies = testKit.spawn(Behaviors.receive(Customer.Response.class)
+                .onAnyMessage(this::onReply)
+                .build());
+    }
+
+    private Behavior<Customer.Response> onReply(Customer.Response response) {
+        answered.countDown();
+        return Behaviors.same();
+    }
+
+    @TearDown
+    public void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void recharge() throws InterruptedException {
+        answered = new CountDownLatch(BURST);
+        for (int customer = 1; customer <= BURST; customer++) {
+            CashRegister.Recharge request = new CashRegister.Recharge(replies, customer);
+            if (direct) {
+                shardRefs[CashRegisterRouter.shardIndex(customer, shards)].tell(request);
+            } else {
+                router.tell(request);
+            }
+        }
+        answered.await();
+    }
+}
@@ -0,0 +1,233 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The full coffee cycle on a real actor system: GetCoffee, State, CreditSuccess, GetCoffeeMachine and
+ * CoffeeMachine.GetCoffee until GetSuccess, or with {@code forwardToMachine} GetCoffee, State, CreditSuccess
+ * and the forwarded CoffeeMachine.GetCoffee until GetSuccess. One operation is one coffee for each of the customers, who
+ * all order at the same time. The balance is topped up before every operation and is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class CoffeePipelineBenchmark {
+
+    @Param({"1", "100"})
+    public int customers;
+
+    @Param({"3", "100"})
+    public int machines;
+
+    /** customers per balance check message from the load balancer to the cash register */
+    @Param({"1", "64"})
+    public int creditBatchSize;
+
+    /** true: the load balancer forwards the order to the machine, false: the customer orders at the machine */
+    @Param({"false", "true"})
+    public boolean forwardToMachine;
+
+    private ActorTestKit testKit;
+    private ActorRef<Driver.Command>[] drivers;
+
+    /**
+     * Customer without think time, driven by the benchmark thread.
+     */
+    static final class Driver extends AbstractBehavior<Customer.Response> {
+        interface Command extends Customer.Response {
+        }
+
+        static final class Recharge implements Command {
+            final CompletableFuture<Boolean> done;
+
+            Recharge(CompletableFuture<Boolean> done) {
+                this.done = done;
+            }
+        }
+
+        static final class Order implements Command {
+            final CompletableFuture<Boolean> done;
+
+            Order(CompletableFuture<Boolean> done) {
+                this.done = done;
+            }
+        }
+
+        private final int id;
+        private final ActorRef<CashRegister.Request> cashRegister;
+        private final ActorRef<LoadBalancer.Mixed> loadBalancer;
+        private CompletableFuture<Boolean> pending;
+
+        static Behavior<Customer.Response> create(int id, ActorRef<CashRegister.Request> cashRegister,
+                                                  ActorRef<LoadBalancer.Mixed> loadBalancer) {
+            return Behaviors.setup(context -> new Driver(context, id, cashRegister, loadBalancer));
+        }
+
+        private Driver(ActorContext<Customer.Response> context, int id, ActorRef<CashRegister.Request> cashRegister,
+                       ActorRef<LoadBalancer.Mixed> loadBalancer) {
+            super(context);
+            this.id = id;
+            this.cashRegister = cashRegister;
+            this.loadBalancer = loadBalancer;
+        }
+
+        @Override
+        public Receive<Customer.Response> createReceive() {
+            return newReceiveBuilder()
+                    .onMessage(Recharge.class, command -> {
+                        pending = command.done;
+                        cashRegister.tell(new CashRegister.Recharge(getContext().getSelf(), id));
+                        return this;
+                    })
+                    .onMessage(Order.class, command -> {
+                        pending = command.done;
+                        loadBalancer.tell(new LoadBalancer.GetCoffee(getContext().getSelf(), id));
+                        return this;
+                    })
+                    .onMessage(Customer.GetCoffeeMachine.class, response -> {
+                        response.coffeeMachine.tell(new CoffeeMachine.GetCoffee(getContext().getSelf(), id, cashRegister,
+                                response.reservation));
+                        return this;
+                    })
+                    .onMessage(Customer.RechargeSuccess.class, response -> complete(true))
+                    .onMessage(Customer.GetSuccess.class, response -> complete(true))
+                    .onMessage(Customer.GetFail.class, response -> complete(false))
+                    .onMessage(Customer.BalanceFail.class, response -> complete(false))
+                    // a request turned away by admission control is done as well, or the benchmark would wait for it forever
+                    .onMessage(Customer.Busy.class, response -> complete(false))
+                    .build();
+        }
+
+        private Behavior<Customer.Response> complete(boolean success) {
+            pending.complete(success);
+            return this;
+        }
+    }
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        configureLogging();
+        // the shop reads its settings from application.conf, which the test kit does not load by itself
+        testKit = ActorTestKit.create("CoffeePipelineBenchmark", config());
+        RoleDispatchers dispatchers = RoleDispatchers.get(testKit.system());
+        ActorRef<CashRegister.Request> cashRegister = testKit.spawn(CashRegisterRouter.create(Runtime.getRuntime().availableProcessors()),
+                "CashRegister", dispatchers.props(ShopMetrics.Role.CASH_REGISTER_ROUTER, Props.empty()));
+        ActorRef<CoffeeMachine.Request>[] coffeeMachines = new ActorRef[machines];
+        for (int i = 0; i < machines; i++) {
+            coffeeMachines[i] = testKit.spawn(coffeeMachine(), "CoffeeMachine" + (i + 1),
+                    dispatchers.props(ShopMetrics.Role.COFFEE_MACHINE, Props.empty()));
+        }
+        ActorRef<LoadBalancer.Mixed> loadBalancer = testKit.spawn(LoadBalancer.create(cashRegister, coffeeMachines,
+                MachineSelector.maxRemaining(), creditBatchSize, Duration.ZERO, forwardToMachine), "LoadBalancer",
+                dispatchers.props(ShopMetrics.Role.LOAD_BALANCER, Props.empty()));
+        drivers = new ActorRef[customers];
+        for (int i = 0; i < customers; i++) {
+            drivers[i] = testKit.spawn(Driver.create(i + 1, cashRegister, loadBalancer), "Customer" + (i + 1),
+                    dispatchers.props(ShopMetrics.Role.CUSTOMER, Props.empty())).narrow();
+        }
+        // wait until the load balancer has heard from the machines
+        for (int attempt = 0; ; attempt++) {
+            topUp();
+            if (coffee()) {
+                break;
+            }
+            if (attempt == 50) {
+                throw new IllegalStateException("Customers could not get a coffee during setup");
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * @return the settings of the actor system, every role runs on the dispatcher application.conf gives it
+     */
+    protected Config config() {
+        return ConfigFactory.load();
+    }
+
+    /**
+     * @return a machine which never runs out and serves every request right away
+     */
+    protected Behavior<CoffeeMachine.Request> coffeeMachine() {
+        return CoffeeMachine.create(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Keeps the actors' log lines out of the measurement.
+     */
+    protected void configureLogging() {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        // logback.xml sets the level of the actors' loggers, which the root level does not override
+        ((Logger) LoggerFactory.getLogger("com.example")).setLevel(Level.WARN);
+    }
+
+    @Setup(org.openjdk.jmh.annotations.Level.Invocation)
+    public void topUp() {
+        CompletableFuture<?>[] done = new CompletableFuture[drivers.length];
+        for (int i = 0; i < drivers.length; i++) {
+            CompletableFuture<Boolean> recharged = new CompletableFuture<>();
+            drivers[i].tell(new Driver.Recharge(recharged));
+            done[i] = recharged;
+        }
+        CompletableFuture.allOf(done).join();
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public boolean coffee() {
+        CompletableFuture<Boolean>[] done = new CompletableFuture[drivers.length];
+        for (int i = 0; i < drivers.length; i++) {
+            done[i] = new CompletableFuture<>();
+            drivers[i].tell(new Driver.Order(done[i]));
+        }
+        boolean served = true;
+        for (CompletableFuture<Boolean> coffee : done) {
+            served &= coffee.join();
+        }
+        return served;
+    }
+
+    @TearDown
+    public void tearDown() {
+        testKit.shutdownTestKit();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the cash register's credit holds with a steady number of outstanding reservations:
+ * every operation holds one credit and settles the oldest one, and every {@code settleEvery}-th
+ * reservation is left to expire instead, like a lost commit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CreditHoldsBenchmark {
+
+    @Param({"1000", "100000"})
+    public int outstanding;
+
+    @Param({"10000"})
+    public int customers;
+
+    @Param({"100"})
+    public int settleEvery;
+
+    private CreditHolds holds;
+    private long[] window;
+    private int next;
+    private long operations;
+
+    @Setup
+    public void setup() {
+        holds = new CreditHolds(8);
+        window = new long[outstanding];
+        for (int i = 0; i < outstanding; i++) {
+            window[i] = holds.hold(i % customers + 1);
+        }
+    }
+
+    @Benchmark
+    public int holdAndSettle() {
+        int slot = next;
+        next = slot + 1 == window.length ? 0 : slot + 1;
+        int settled = ++operations % settleEvery == 0 ? 0 : holds.settle(window[slot]);
+        window[slot] = holds.hold((int) (operations % customers) + 1);
+        if (operations % outstanding == 0) {
+            // one tick per window, so the unsettled reservations expire after eight windows
+            holds.tick(customer -> { });
+        }
+        return settled;
+    }
+}
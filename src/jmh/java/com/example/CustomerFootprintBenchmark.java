@@ -0,0 +1,99 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.typed.ActorSystem;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap taken per customer by the whole shop, on the simulated scheduler of {@code simulation.conf}. One operation
+ * opens the shop and lets one simulated minute pass, in which every customer enters and acts once; the customers
+ * think for an hour afterwards, so each of them waits on its think timer when the heap is measured. The retained
+ * heap of the shop divided by the customers is printed after every iteration; it includes the balance of the
+ * customer at the cash register, the think timer and everything the customer itself holds, or its share of a
+ * {@link CustomerPopulation}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class CustomerFootprintBenchmark {
+
+    @Param({"100000"})
+    public int customers;
+
+    /** customers per customer population, 0 for an actor per customer */
+    @Param({"0", "10000"})
+    public int customerPopulationSize;
+
+    private ActorSystem<CoffeeMain.Command> system;
+    private SimulatedScheduler scheduler;
+    private long usedBefore;
+
+    @Setup(Level.Iteration)
+    public void openSystem() {
+        Config config = ConfigFactory.parseString(
+                "coffee.customers = " + customers + "\n"
+                        + "coffee.customer-population-size = " + customerPopulationSize + "\n"
+                        + "coffee.customer-think-time { distribution = fixed, mean = 1h }\n"
+                        + "coffee.spawn { batch-size = 1000, batch-interval = 0s }\n"
+                        + "coffee.logging.summary-interval = 0s\n"
+                        + "akka.loglevel = WARNING")
+                .withFallback(ConfigFactory.load("simulation"));
+        system = ActorSystem.create(CoffeeMain.create(), "CustomerFootprintBenchmark", config);
+        scheduler = ShopClock.get(system).simulation();
+        usedBefore = usedHeap();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeSystem() {
+        long used = usedHeap() - usedBefore;
+        System.out.println();
+        System.out.println(customers + " customers: " + used / customers + " bytes per customer, "
+                + used / (1024 * 1024) + " MB");
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().join();
+        system = null;
+        scheduler = null;
+    }
+
+    @Benchmark
+    public long openShop() throws InterruptedException {
+        system.tell(new CoffeeMain.StartMessage());
+        scheduler.advance(Duration.ofMinutes(1));
+        return scheduler.nanoTime();
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // a few collections, until the finalization and the reference processing of the previous ones settled
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * The coffee cycle of {@link CoffeePipelineBenchmark} with every actor role on the default dispatcher
+ * against the role dispatchers of {@code coffee.dispatchers}, and with the customers on virtual threads.
+ */
+public class DispatcherBenchmark extends CoffeePipelineBenchmark {
+
+    /** default: one dispatcher for all, roles: the role dispatchers, virtual: the role dispatchers with virtual customers */
+    @Param({"default", "roles", "virtual"})
+    public String dispatchers;
+
+    @Override
+    protected Config config() {
+        String overrides;
+        switch (dispatchers) {
+            case "default":
+                overrides = "coffee.dispatchers.enabled = off";
+                break;
+            case "roles":
+                overrides = "coffee.dispatchers.enabled = on";
+                break;
+            case "virtual":
+                overrides = "coffee.dispatchers.enabled = on\n"
+                        + "coffee.dispatchers.role.customer = \"coffee.dispatchers.customers-virtual\"";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown dispatchers: " + dispatchers);
+        }
+        return ConfigFactory.parseString(overrides).withFallback(ConfigFactory.load());
+    }
+}
@@ -0,0 +1,47 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.core.joran.spi.JoranException;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.TearDown;
+import org.slf4j.LoggerFactory;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * The coffee cycle of {@link CoffeePipelineBenchmark} with the logging configuration the shop ships with:
+ * {@code logback.xml}, which logs every message, against {@code logback-production.xml}, which only keeps
+ * the periodic event summary. Standard out is discarded, so only the cost inside the actors is measured.
+ */
+public class LoggingBenchmark extends CoffeePipelineBenchmark {
+
+    @Param({"logback.xml", "logback-production.xml"})
+    public String logbackConfiguration;
+
+    private PrintStream originalOut;
+
+    @Override
+    protected void configureLogging() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+        JoranConfigurator configurator = new JoranConfigurator();
+        configurator.setContext(context);
+        try {
+            configurator.doConfigure(getClass().getClassLoader().getResource(logbackConfiguration));
+        } catch (JoranException e) {
+            throw new IllegalStateException("Could not load " + logbackConfiguration, e);
+        }
+    }
+
+    @TearDown
+    public void restoreOut() {
+        System.setOut(originalOut);
+    }
+}
@@ -0,0 +1,181 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import org.HdrHistogram.Histogram;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Machine selection on a simulated fleet. Every operation routes one customer, and between two customers
+ * the machines brew long enough for the fleet to run at the given load. The selector sees the queues only
+ * as of the last view refresh, like a balancer whose supply reports lag behind. Besides the cost of a
+ * selection, the benchmark counts how many customers were already waiting at the chosen machine
+ * ({@code waitingAhead} over {@code customersRouted}), which shows herding: a strategy that sends everybody
+ * to the fullest machine builds long queues while its view is stale. The herding shows most in the tail, so
+ * the percentiles of the customers waiting ahead are printed after every iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MachineSelectorBenchmark {
+
+    @Param({"max-remaining", "round-robin", "least-outstanding", "power-of-two-choices", "weighted-by-brew-speed"})
+    public String strategy;
+
+    @Param({"3", "128", "1024"})
+    public int machines;
+
+    // offered load relative to the total brew rate of the fleet
+    @Param({"0.9"})
+    public double load;
+
+    // customers routed between two refreshes of the selector's view
+    @Param({"1", "64"})
+    public int staleness;
+
+    private Fleet fleet;
+    private MachineSelector selector;
+    private final Histogram waitingAhead = new Histogram(2);
+
+    /**
+     * Machines with a huge supply and a brew rate between 0.5 and 1.5 cups per tick. Like the load balancer's
+     * own view, the available coffee of a machine is its supply minus the customers still waiting there.
+     */
+    static final class Fleet implements MachineSelector.View {
+        final int[] supply;
+        final double[] brewRate;
+        // queue length of each machine at the time of its last change, drained lazily
+        final double[] queue;
+        final double[] queueTime;
+        final double ticksPerCustomer;
+        final int staleness;
+        // queue lengths as the selector sees them
+        final int[] seen;
+        double clock;
+        int sinceRefresh;
+
+        Fleet(int machines, double load, int staleness, Random random) {
+            supply = new int[machines];
+            brewRate = new double[machines];
+            queue = new double[machines];
+            queueTime = new double[machines];
+            seen = new int[machines];
+            this.staleness = staleness;
+            double totalRate = 0;
+            for (int i = 0; i < machines; i++) {
+                supply[i] = 1_000_000;
+                brewRate[i] = 0.5 + random.nextDouble();
+                totalRate += brewRate[i];
+            }
+            ticksPerCustomer = 1.0 / (totalRate * load);
+        }
+
+        /**
+         * Lets the machines brew for the time until the next customer arrives.
+         */
+        void advance() {
+            clock += ticksPerCustomer;
+            if (++sinceRefresh >= staleness) {
+                sinceRefresh = 0;
+                for (int i = 0; i < seen.length; i++) {
+                    seen[i] = (int) Math.ceil(queueLength(i));
+                }
+            }
+        }
+
+        double queueLength(int machine) {
+            return Math.max(0, queue[machine] - brewRate[machine] * (clock - queueTime[machine]));
+        }
+
+        void enqueue(int machine) {
+            queue[machine] = queueLength(machine) + 1;
+            queueTime[machine] = clock;
+        }
+
+        @Override
+        public int size() {
+            return supply.length;
+        }
+
+        @Override
+        public int available(int machine) {
+            return supply[machine] - outstanding(machine);
+        }
+
+        @Override
+        public int outstanding(int machine) {
+            return seen[machine];
+        }
+
+        @Override
+        public int queued(int machine) {
+            return seen[machine];
+        }
+
+        @Override
+        public double brewRate(int machine) {
+            return brewRate[machine];
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Herding {
+        public long waitingAhead;
+        public long customersRouted;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            waitingAhead = 0;
+            customersRouted = 0;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        Random random = new Random(42);
+        fleet = new Fleet(machines, load, staleness, random);
+        selector = MachineSelector.byName(strategy, random);
+        waitingAhead.reset();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printWaitingAhead() {
+        System.out.println();
+        System.out.printf("%s machines=%d staleness=%d waitingAhead p50=%d p99=%d p999=%d max=%d%n", strategy, machines,
+                staleness, waitingAhead.getValueAtPercentile(50), waitingAhead.getValueAtPercentile(99),
+                waitingAhead.getValueAtPercentile(99.9), waitingAhead.getMaxValue());
+    }
+
+    @Benchmark
+    public int select(Herding herding) {
+        fleet.advance();
+        int selected = selector.select(fleet);
+        long ahead = (long) Math.ceil(fleet.queueLength(selected));
+        herding.waitingAhead += ahead;
+        herding.customersRouted++;
+        waitingAhead.recordValue(ahead);
+        fleet.enqueue(selected);
+        return selected;
+    }
+}
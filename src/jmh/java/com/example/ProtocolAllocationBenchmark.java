@@ -0,0 +1,28 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+
+/**
+ * The coffee cycle of {@link CoffeePipelineBenchmark} on the simulated scheduler of {@code simulation.conf}, for
+ * the bytes allocated per coffee. Every actor runs on the one thread of the simulation, which lives as long as the
+ * actor system, so the allocations the GC profiler counts per thread are all there are, unlike on pooled
+ * dispatcher threads which come and go. Time stands still, the cycle needs no timer.
+ * <p>
+ * {@code gradle jmh -Pjmh.includes=ProtocolAllocation -Pjmh.args='-p customers=1 -p creditBatchSize=1 -prof gc'}:
+ * with one customer an operation is one coffee, and {@code gc.alloc.rate.norm} the bytes per coffee, including
+ * the recharge before it and the futures of the benchmark thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+public class ProtocolAllocationBenchmark extends CoffeePipelineBenchmark {
+
+    @Override
+    protected Config config() {
+        return ConfigFactory.parseString("akka.loglevel = WARNING").withFallback(ConfigFactory.load("simulation"));
+    }
+}
@@ -0,0 +1,286 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.ExtendedActorSystem;
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorRefResolver;
+import akka.actor.typed.javadsl.Adapter;
+import akka.actor.typed.javadsl.Behaviors;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size and speed of the protocol messages on the wire: {@link CoffeeSerializer} against Jackson CBOR and Java
+ * serialization. Jackson and Java serialization get the message as a plain object with the actor references
+ * in their serialization format, which is what a serializer built on them would do; all three resolve the
+ * references when decoding. The actor system has a remote address, so the references are as long as in a cluster.
+ * The size of every encoded message is printed in the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"coffee", "jackson-cbor", "java"})
+    public String format;
+
+    /** GetSupply: a machine's supply report, State: a balance check, CreditBatch: the answer for 64 customers */
+    @Param({"GetSupply", "State", "CreditBatch"})
+    public String message;
+
+    private ActorTestKit testKit;
+    private Codec codec;
+    private byte[] encoded;
+    private Object original;
+
+    interface Codec {
+        byte[] encode(Object message) throws IOException;
+
+        Object decode(byte[] bytes) throws IOException;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        testKit = ActorTestKit.create("SerializationBenchmark", ConfigFactory.parseString(
+                "akka.actor.provider = cluster\n"
+                        + "akka.remote.artery.canonical.hostname = \"127.0.0.1\"\n"
+                        + "akka.remote.artery.canonical.port = 0").withFallback(ConfigFactory.load()));
+        original = message(message);
+        Wire wire = new Wire(ActorRefResolver.get(testKit.system()));
+        switch (format) {
+            case "coffee":
+                codec = new CoffeeCodec(new CoffeeSerializer((ExtendedActorSystem) Adapter.toClassic(testKit.system())), original);
+                break;
+            case "jackson-cbor":
+                codec = new JacksonCodec(wire, original);
+                break;
+            case "java":
+                codec = new JavaCodec(wire);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        encoded = codec.encode(original);
+        System.out.println();
+        System.out.println(format + " " + message + ": " + encoded.length + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return codec.encode(original);
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        return codec.decode(encoded);
+    }
+
+    private Object message(String name) {
+        switch (name) {
+            case "GetSupply":
+                return new LoadBalancer.GetSupply(spawn("CoffeeMachine1"), 7, 12_345, 8.0, false, 3);
+            case "State":
+                return new CashRegister.State(spawn("LoadBalancer"), spawn("Customer17"), 17);
+            case "CreditBatch": {
+                int[] customerIds = new int[64];
+                BitSet granted = new BitSet();
+                long[] reservations = new long[64];
+                for (int i = 0; i < 64; i++) {
+                    customerIds[i] = i * 37 + 1;
+                    if (i % 10 != 0) {
+                        granted.set(i);
+                        reservations[i] = 1_000_000 + i;
+                    }
+                }
+                return new LoadBalancer.CreditBatch(customerIds, granted, reservations);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown message: " + name);
+        }
+    }
+
+    private <T> ActorRef<T> spawn(String name) {
+        return testKit.spawn(Behaviors.<T>empty(), name);
+    }
+
+    static final class CoffeeCodec implements Codec {
+        private final CoffeeSerializer serializer;
+        private final String manifest;
+
+        CoffeeCodec(CoffeeSerializer serializer, Object message) {
+            this.serializer = serializer;
+            this.manifest = serializer.manifest(message);
+        }
+
+        @Override
+        public byte[] encode(Object message) {
+            return serializer.toBinary(message);
+        }
+
+        @Override
+        public Object decode(byte[] bytes) throws IOException {
+            return serializer.fromBinary(bytes, manifest);
+        }
+    }
+
+    static final class JacksonCodec implements Codec {
+        private final ObjectMapper mapper = new ObjectMapper(new CBORFactory());
+        private final Wire wire;
+        private final Class<?> type;
+
+        JacksonCodec(Wire wire, Object message) {
+            this.wire = wire;
+            this.type = wire.toWire(message).getClass();
+        }
+
+        @Override
+        public byte[] encode(Object message) throws IOException {
+            return mapper.writeValueAsBytes(wire.toWire(message));
+        }
+
+        @Override
+        public Object decode(byte[] bytes) throws IOException {
+            return wire.fromWire(mapper.readValue(bytes, type));
+        }
+    }
+
+    static final class JavaCodec implements Codec {
+        private final Wire wire;
+
+        JavaCodec(Wire wire) {
+            this.wire = wire;
+        }
+
+        @Override
+        public byte[] encode(Object message) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(wire.toWire(message));
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public Object decode(byte[] bytes) throws IOException {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return wire.fromWire(in.readObject());
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * The messages as plain objects with the actor references as strings, for Jackson and Java serialization.
+     */
+    static final class Wire {
+        private final ActorRefResolver resolver;
+
+        Wire(ActorRefResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        public static final class Supply implements Serializable {
+            public String sender;
+            public int remainingCoffee;
+            public long handled;
+            public double brewRate;
+            public boolean refilling;
+            public int queued;
+        }
+
+        public static final class BalanceCheck implements Serializable {
+            public String sender;
+            public String ofWhom;
+            public int customerId;
+        }
+
+        public static final class Credits implements Serializable {
+            public int[] customerIds;
+            public long[] granted;
+            public long[] reservations;
+        }
+
+        Object toWire(Object message) {
+            if (message instanceof LoadBalancer.GetSupply) {
+                LoadBalancer.GetSupply supply = (LoadBalancer.GetSupply) message;
+                Supply wire = new Supply();
+                wire.sender = resolver.toSerializationFormat(supply.sender);
+                wire.remainingCoffee = supply.remainingCoffee;
+                wire.handled = supply.handled;
+                wire.brewRate = supply.brewRate;
+                wire.refilling = supply.refilling;
+                wire.queued = supply.queued;
+                return wire;
+            } else if (message instanceof CashRegister.State) {
+                CashRegister.State state = (CashRegister.State) message;
+                BalanceCheck wire = new BalanceCheck();
+                wire.sender = resolver.toSerializationFormat(state.sender);
+                wire.ofWhom = resolver.toSerializationFormat(state.ofWhom);
+                wire.customerId = state.customerId;
+                return wire;
+            } else {
+                LoadBalancer.CreditBatch batch = (LoadBalancer.CreditBatch) message;
+                Credits wire = new Credits();
+                wire.customerIds = new int[batch.size()];
+                BitSet granted = new BitSet(batch.size());
+                wire.reservations = new long[batch.size()];
+                for (int i = 0; i < batch.size(); i++) {
+                    wire.customerIds[i] = batch.customerId(i);
+                    granted.set(i, batch.granted(i));
+                    wire.reservations[i] = batch.reservation(i);
+                }
+                wire.granted = granted.toLongArray();
+                return wire;
+            }
+        }
+
+        Object fromWire(Object wire) {
+            if (wire instanceof Supply) {
+                Supply supply = (Supply) wire;
+                return new LoadBalancer.GetSupply(resolver.resolveActorRef(supply.sender), supply.remainingCoffee,
+                        supply.handled, supply.brewRate, supply.refilling, supply.queued);
+            } else if (wire instanceof BalanceCheck) {
+                BalanceCheck state = (BalanceCheck) wire;
+                return new CashRegister.State(resolver.resolveActorRef(state.sender), resolver.resolveActorRef(state.ofWhom),
+                        state.customerId);
+            } else {
+                Credits credits = (Credits) wire;
+                return new LoadBalancer.CreditBatch(credits.customerIds, BitSet.valueOf(credits.granted), credits.reservations);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Admission control of the load balancer. A coffee request is admitted if fewer than {@code maxInFlight}
+ * requests are between the load balancer and their coffee, and a token bucket of {@code rate} requests
+ * per second with room for {@code burst} requests has a token left. Otherwise the request is shed and the
+ * customer is told when to try again, so a spike is turned away at the door instead of queueing up in
+ * the mailboxes.
+ * <p>
+ * Not thread-safe, every load balancer owns its own instance.
+ */
+public final class Admission {
+
+    private final int maxInFlight;
+    // requests per nanosecond, 0 turns the token bucket off
+    private final double ratePerNano;
+    private final double burst;
+    private final Duration retryAfter;
+    private final LongSupplier nanoClock;
+
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param maxInFlight requests admitted but not yet answered by a machine, 0 for no limit
+     * @param rate        requests per second, 0 for no limit
+     * @param burst       requests admitted at once after an idle period
+     * @param retryAfter  how long a customer turned away because of the in-flight limit waits at least
+     */
+    public Admission(int maxInFlight, double rate, int burst, Duration retryAfter) {
+        this(maxInFlight, rate, burst, retryAfter, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock the clock the tokens are refilled by, {@link ShopClock#nanoTime()} of the actor system
+     */
+    public Admission(int maxInFlight, double rate, int burst, Duration retryAfter, LongSupplier nanoClock) {
+        this.maxInFlight = maxInFlight;
+        this.ratePerNano = rate / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, burst);
+        this.retryAfter = retryAfter;
+        this.nanoClock = nanoClock;
+        this.tokens = this.burst;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * @return admission control which admits every request
+     */
+    public static Admission unlimited() {
+        return new Admission(0, 0, 1, Duration.ZERO);
+    }
+
+    /**
+     * Decides about one request and takes its token if it is admitted.
+     *
+     * @param inFlight the number of requests admitted but not yet answered
+     * @return null if the request is admitted, otherwise how long the customer should wait
+     */
+    Duration admit(int inFlight) {
+        if (maxInFlight > 0 && inFlight >= maxInFlight) {
+            return retryAfter;
+        }
+        if (ratePerNano == 0) {
+            return null;
+        }
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerNano);
+        refilledAt = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return null;
+        }
+        long untilNextToken = (long) Math.ceil((1 - tokens) / ratePerNano);
+        Duration wait = Duration.ofNanos(untilNextToken);
+        return wait.compareTo(retryAfter) > 0 ? wait : retryAfter;
+    }
+}
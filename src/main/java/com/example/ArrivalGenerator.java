@@ -0,0 +1,125 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+
+/**
+ * Open-loop load: customers arrive at the times of a schedule, no matter how long the shop takes for the
+ * previous ones. Every arrival goes to the next customer in turn. The timer of the scheduler is coarser than
+ * the arrivals, so every tick sends all arrivals which are due with their scheduled time; the customers measure
+ * their coffee latency from it, so a shop which falls behind shows in the latency instead of slowing the load down.
+ * The customers are either actors of their own or parts of {@link CustomerPopulation}s. An actor of its own gets
+ * an arrival as one message; the arrivals go to the customers in turn, so the due arrivals of consecutive customers of
+ * one population go to it as one message, which keeps the cost of an overload of arrivals low for the shop.
+ */
+public class ArrivalGenerator extends AbstractBehavior<ArrivalGenerator.Command> {
+
+    // the actor of customer id i is owners[(i - 1) / customersPerOwner]
+    private final ActorRef<Customer.Response>[] owners;
+    private final int customersPerOwner;
+    private final int customers;
+    private final ThinkTime interArrival;
+    private final SplittableRandom random;
+    private final TimerScheduler<Command> timers;
+    private final ShopClock clock;
+    // ShopClock time of the next arrival
+    private long nextArrival;
+    private int nextCustomer;
+    // the arrival times of the run being collected, one per customer of an actor
+    private final long[] runArrivals;
+
+    public interface Command {
+    }
+
+    /**
+     * Is triggered by the timer when the next arrival is due.
+     */
+    private enum Tick implements Command {
+        INSTANCE
+    }
+
+    /**
+     * Creates the load for customers with an actor each, customer id i + 1 is {@code customers[i]}.
+     *
+     * @param interArrival the time between two arrivals, exponential for a Poisson process
+     * @param random       draws the times between arrivals
+     */
+    public static Behavior<Command> create(ActorRef<Customer.Response>[] customers, ThinkTime interArrival, SplittableRandom random) {
+        return create(customers, 1, customers.length, interArrival, random);
+    }
+
+    /**
+     * Creates the load for customers ids 1 to {@code customers}, which share their actors.
+     *
+     * @param owners            the actor of customer id i is {@code owners[(i - 1) / customersPerOwner]}
+     * @param customersPerOwner the customers of every owner, the last one may have fewer
+     */
+    public static Behavior<Command> create(ActorRef<Customer.Response>[] owners, int customersPerOwner, int customers,
+                                           ThinkTime interArrival, SplittableRandom random) {
+        if (customers == 0) {
+            throw new IllegalArgumentException("Open-loop load needs at least one customer");
+        }
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new ArrivalGenerator(context, timers, owners, customersPerOwner, customers, interArrival, random)));
+    }
+
+    private ArrivalGenerator(ActorContext<Command> context, TimerScheduler<Command> timers, ActorRef<Customer.Response>[] owners,
+                             int customersPerOwner, int customers, ThinkTime interArrival, SplittableRandom random) {
+        super(context);
+        this.timers = timers;
+        this.owners = owners;
+        this.customersPerOwner = customersPerOwner;
+        this.customers = customers;
+        this.interArrival = interArrival;
+        this.random = random;
+        runArrivals = new long[customersPerOwner];
+        this.clock = ShopClock.get(context.getSystem());
+        nextArrival = clock.nanoTime() + interArrival.next(random).toNanos();
+        scheduleTick(clock.nanoTime());
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessageEquals(Tick.INSTANCE, this::onTick)
+                .build();
+    }
+
+    /**
+     * Sends every arrival which is due, one message per run of consecutive customers of the same actor.
+     *
+     * @return this
+     */
+    private Behavior<Command> onTick() {
+        long now = clock.nanoTime();
+        while (nextArrival <= now) {
+            int first = nextCustomer;
+            int owner = first / customersPerOwner;
+            int run = 0;
+            do {
+                runArrivals[run++] = nextArrival;
+                nextCustomer = (nextCustomer + 1) % customers;
+                nextArrival += interArrival.next(random).toNanos();
+            } while (nextArrival <= now && nextCustomer != 0 && nextCustomer / customersPerOwner == owner);
+            owners[owner].tell(run == 1 ? new Customer.Arrive(first + 1, runArrivals[0])
+                    : new Customer.Arrivals(first + 1, runArrivals, run));
+        }
+        scheduleTick(now);
+        return this;
+    }
+
+    private void scheduleTick(long now) {
+        timers.startSingleTimer(Tick.INSTANCE, Duration.ofNanos(Math.max(0, nextArrival - now)));
+    }
+}
@@ -0,0 +1,300 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import com.typesafe.config.Config;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Append-only journal of the balances of one cash register shard, so they survive a restart.
+ * <p>
+ * A balance record is the id of the customer and its new balance. Records are collected in a buffer and
+ * written with one fsync per {@link #commit()}, so a batch of changes shares the cost of the sync. After
+ * {@code snapshotEvery} changes all balances are written to a snapshot file and the journal starts over,
+ * which bounds the work of a recovery.
+ * <p>
+ * Recovered balances are kept by customer id and handed to the customer when it shows up, see {@link #adopt(int)}.
+ */
+public final class BalanceJournal implements AutoCloseable {
+
+    private static final byte BALANCE = 'B';
+    private static final int BALANCE_SIZE = 1 + 4 + 4;
+    private static final int SNAPSHOT_MAGIC = 0xC0FFEE02;
+
+    /**
+     * Where and how the cash register shards journal their balances.
+     */
+    public static final class Settings {
+        public final Path directory;
+        public final int maxBatch;
+        public final int snapshotEvery;
+
+        public Settings(Path directory, int maxBatch, int snapshotEvery) {
+            this.directory = directory;
+            this.maxBatch = maxBatch;
+            this.snapshotEvery = snapshotEvery;
+        }
+
+        /**
+         * @param config the {@code coffee.journal} section
+         * @return the settings, or null if the journal is turned off
+         */
+        static Settings fromConfig(Config config) {
+            if (!config.getBoolean("enabled")) {
+                return null;
+            }
+            return new Settings(Paths.get(config.getString("directory")),
+                    Math.max(1, config.getInt("max-batch")), Math.max(1, config.getInt("snapshot-every")));
+        }
+    }
+
+    private final Path journalFile;
+    private final Path snapshotFile;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+    private final Settings settings;
+
+    // id and last balance of every customer in the journal, in the order they were first journaled
+    private int[] customers = new int[16];
+    private int[] balances = new int[16];
+    private int size;
+    // index + 1 of every customer in the arrays above, 0 for unknown customers
+    private final BalanceStore indexes = new BalanceStore();
+
+    private int uncommitted;
+    private int sinceSnapshot;
+    private final long recoveredEvents;
+
+    private BalanceJournal(Settings settings, int shard) throws IOException {
+        this.settings = settings;
+        Files.createDirectories(settings.directory);
+        journalFile = settings.directory.resolve("shard-" + shard + ".journal");
+        snapshotFile = settings.directory.resolve("shard-" + shard + ".snapshot");
+        if (Files.exists(snapshotFile)) {
+            readSnapshot();
+        }
+        channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recoveredEvents = replay();
+        sinceSnapshot = (int) Math.min(Integer.MAX_VALUE, recoveredEvents);
+    }
+
+    /**
+     * Opens the journal of the shard and recovers its balances from the snapshot and the journal.
+     */
+    public static BalanceJournal open(Settings settings, int shard) throws IOException {
+        return new BalanceJournal(settings, shard);
+    }
+
+    /**
+     * Checks that the journal directory was written with the same number of shards, because the shard
+     * of a customer depends on the shard count. A new directory is marked with the given count.
+     */
+    public static void checkShardCount(Settings settings, int shardCount) throws IOException {
+        Files.createDirectories(settings.directory);
+        Path marker = settings.directory.resolve("shards");
+        if (!Files.exists(marker)) {
+            Files.write(marker, Integer.toString(shardCount).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        int written = Integer.parseInt(new String(Files.readAllBytes(marker), StandardCharsets.UTF_8).trim());
+        if (written != shardCount) {
+            throw new IllegalStateException("The journal in " + settings.directory + " was written by " + written
+                    + " cash register shards, but " + shardCount + " are configured."
+                    + " Set coffee.cash-register-shards = " + written + " or start with a new journal directory.");
+        }
+    }
+
+    /**
+     * @return the number of customers known to the journal, recovered or new
+     */
+    int customers() {
+        return size;
+    }
+
+    /**
+     * @return the number of balance changes replayed from the journal, on top of the snapshot
+     */
+    long recoveredEvents() {
+        return recoveredEvents;
+    }
+
+    int maxBatch() {
+        return settings.maxBatch;
+    }
+
+    /**
+     * Hands a recovered balance to the customer.
+     *
+     * @return the last journaled balance, or -1 if the customer is not in the journal
+     */
+    int adopt(int customer) {
+        int index = indexes.get(customer) - 1;
+        return index < 0 ? -1 : balances[index];
+    }
+
+    /**
+     * Appends the new balance of the customer. It is durable after the next {@link #commit()}.
+     */
+    void balanceChanged(int customer, int balance) throws IOException {
+        set(customer, balance);
+        ensureRoom(BALANCE_SIZE);
+        buffer.put(BALANCE).putInt(customer).putInt(balance);
+        uncommitted++;
+        sinceSnapshot++;
+    }
+
+    /**
+     * @return the number of balance changes which are not durable yet
+     */
+    int uncommitted() {
+        return uncommitted;
+    }
+
+    /**
+     * Writes the buffered records and syncs them to disk, then takes a snapshot if one is due.
+     */
+    void commit() throws IOException {
+        drain();
+        channel.force(false);
+        uncommitted = 0;
+        if (sinceSnapshot >= settings.snapshotEvery) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Writes all balances to the snapshot file and empties the journal.
+     */
+    void snapshot() throws IOException {
+        drain();
+        Path temporary = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            buffer.putInt(SNAPSHOT_MAGIC).putInt(size);
+            for (int i = 0; i < size; i++) {
+                if (buffer.remaining() < 4 + 4) {
+                    writeTo(out);
+                }
+                buffer.putInt(customers[i]).putInt(balances[i]);
+            }
+            writeTo(out);
+            out.force(false);
+        }
+        Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // a crash before the truncation only replays balances the snapshot already has
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        sinceSnapshot = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            commit();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Keeps the balance of the customer in memory, for the snapshots and for {@link #adopt(int)}.
+     */
+    private void set(int customer, int balance) {
+        int index = indexes.get(customer) - 1;
+        if (index < 0) {
+            index = size++;
+            if (index == customers.length) {
+                customers = Arrays.copyOf(customers, index * 2);
+                balances = Arrays.copyOf(balances, index * 2);
+            }
+            customers[index] = customer;
+            indexes.add(customer, index + 1);
+        }
+        balances[index] = balance;
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        writeTo(channel);
+    }
+
+    private void writeTo(FileChannel out) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void readSnapshot() throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(snapshotFile));
+        if (in.remaining() < 8 || in.getInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Not a balance snapshot: " + snapshotFile);
+        }
+        int count = in.getInt();
+        if (count < 0 || in.remaining() < count * 8L) {
+            throw new IOException("Balance snapshot cut off: " + snapshotFile);
+        }
+        customers = new int[Math.max(16, count)];
+        balances = new int[customers.length];
+        for (int i = 0; i < count; i++) {
+            set(in.getInt(), in.getInt());
+        }
+    }
+
+    /**
+     * Applies the journal on top of the snapshot. A record cut off by a crash ends the journal; it was
+     * never committed, so no customer was told about it, and it is cut off the file.
+     *
+     * @return the number of balance records replayed
+     */
+    private long replay() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return 0;
+        }
+        MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        long events = 0;
+        int valid = 0;
+        while (in.remaining() > 0) {
+            byte type = in.get();
+            if (type == BALANCE && in.remaining() >= BALANCE_SIZE - 1) {
+                int customer = in.getInt();
+                if (customer <= 0) {
+                    throw new IOException("Balance of customer " + customer + " at " + valid + " in " + journalFile);
+                }
+                set(customer, in.getInt());
+                events++;
+            } else if (type == BALANCE || type == 0) {
+                // cut off record, or the zeroed tail of a file extended by the crash
+                break;
+            } else {
+                throw new IOException("Unknown record type " + type + " at " + valid + " in " + journalFile);
+            }
+            valid = in.position();
+        }
+        if (valid < size) {
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+        return events;
+    }
+}
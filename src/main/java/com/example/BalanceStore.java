@@ -0,0 +1,252 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from a customer id to its balance.
+ * Ids and balances are kept as primitive ints, so reading or changing the balance
+ * of a customer allocates nothing and an entry costs 8 bytes plus the table slack.
+ * Customer ids are positive, 0 marks an empty slot. The table grows without limit.
+ * <p>
+ * The total of all balances is kept up to date with every change. A ranked store also keeps the customers
+ * of every balance in a doubly linked list through their slots, which costs another 8 bytes per entry; moving
+ * a customer to the list of its new balance takes constant time, and the highest balances are read off the
+ * lists from the top without looking at the other customers.
+ */
+final class BalanceStore {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final boolean ranked;
+    private int[] keys;
+    private int[] balances;
+    private int size;
+    private int resizeAt;
+    private long total;
+    // ranked only: the next and previous slot with the same balance, -1 at the end of a list
+    private int[] next;
+    private int[] previous;
+    // ranked only: the first slot of every balance, -1 for none; negative balances are listed under 0
+    private int[] firstOfBalance;
+    private int maxBalance;
+
+    BalanceStore() {
+        this(16);
+    }
+
+    BalanceStore(int expectedCustomers) {
+        this(expectedCustomers, false);
+    }
+
+    /**
+     * @param ranked true to keep the customers ordered by balance for {@link #top}
+     */
+    BalanceStore(int expectedCustomers, boolean ranked) {
+        this.ranked = ranked;
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedCustomers / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return the number of known customers
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the sum of the balances of all customers
+     */
+    long total() {
+        return total;
+    }
+
+    boolean ranked() {
+        return ranked;
+    }
+
+    /**
+     * @return true if the customer has been seen before
+     */
+    boolean contains(int customer) {
+        return keys[slot(customer)] != 0;
+    }
+
+    /**
+     * @return the balance of the customer, 0 for an unknown customer
+     */
+    int get(int customer) {
+        int slot = slot(customer);
+        return keys[slot] == 0 ? 0 : balances[slot];
+    }
+
+    /**
+     * Adds the given amount to the balance of the customer, registering the customer if necessary.
+     *
+     * @return the new balance
+     */
+    int add(int customer, int amount) {
+        int slot = slot(customer);
+        total += amount;
+        if (keys[slot] == 0) {
+            keys[slot] = customer;
+            balances[slot] = amount;
+            if (ranked) {
+                link(slot);
+            }
+            if (++size > resizeAt) {
+                resize();
+            }
+            return amount;
+        }
+        if (!ranked) {
+            return balances[slot] += amount;
+        }
+        unlink(slot);
+        balances[slot] += amount;
+        link(slot);
+        return balances[slot];
+    }
+
+    /**
+     * Takes one credit from the customer if there is any.
+     *
+     * @return true if the customer had a credit left
+     */
+    boolean tryDebit(int customer) {
+        int slot = slot(customer);
+        if (keys[slot] == 0 || balances[slot] <= 0) {
+            return false;
+        }
+        total--;
+        if (ranked) {
+            unlink(slot);
+            balances[slot]--;
+            link(slot);
+        } else {
+            balances[slot]--;
+        }
+        return true;
+    }
+
+    /**
+     * Copies the customers with the highest balances, highest first; customers with the same balance come in no
+     * particular order, and negative balances rank as 0. Takes as long as the customers copied plus the balances
+     * between the highest and the lowest one copied.
+     *
+     * @return how many customers were copied, at most the length of the arrays
+     * @throws IllegalStateException if the store is not ranked
+     */
+    int top(int[] customers, int[] customerBalances) {
+        if (!ranked) {
+            throw new IllegalStateException("The balances are not ranked");
+        }
+        int limit = Math.min(customers.length, customerBalances.length);
+        int count = 0;
+        for (int balance = maxBalance; balance >= 0 && count < limit; balance--) {
+            for (int slot = firstOfBalance[balance]; slot >= 0 && count < limit; slot = next[slot]) {
+                customers[count] = keys[slot];
+                customerBalances[count] = balances[slot];
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the slot holding the customer, or the empty slot where it would be inserted.
+     */
+    private int slot(int customer) {
+        if (customer <= 0) {
+            throw new IllegalArgumentException("Customer ids are positive, not " + customer);
+        }
+        int mask = keys.length - 1;
+        int slot = mix(customer) & mask;
+        int key;
+        while ((key = keys[slot]) != 0 && key != customer) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Puts the slot first in the list of its balance.
+     */
+    private void link(int slot) {
+        int balance = Math.max(0, balances[slot]);
+        if (balance >= firstOfBalance.length) {
+            int length = firstOfBalance.length;
+            firstOfBalance = Arrays.copyOf(firstOfBalance, Math.max(balance + 1, length << 1));
+            Arrays.fill(firstOfBalance, length, firstOfBalance.length, -1);
+        }
+        int first = firstOfBalance[balance];
+        next[slot] = first;
+        previous[slot] = -1;
+        if (first >= 0) {
+            previous[first] = slot;
+        }
+        firstOfBalance[balance] = slot;
+        maxBalance = Math.max(maxBalance, balance);
+    }
+
+    /**
+     * Takes the slot out of the list of its balance, before the balance changes.
+     */
+    private void unlink(int slot) {
+        int balance = Math.max(0, balances[slot]);
+        if (previous[slot] >= 0) {
+            next[previous[slot]] = next[slot];
+        } else {
+            firstOfBalance[balance] = next[slot];
+        }
+        if (next[slot] >= 0) {
+            previous[next[slot]] = previous[slot];
+        }
+        while (maxBalance > 0 && firstOfBalance[maxBalance] < 0) {
+            maxBalance--;
+        }
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        int[] oldBalances = balances;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                balances[slot] = oldBalances[i];
+                if (ranked) {
+                    link(slot);
+                }
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        balances = new int[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+        if (ranked) {
+            // the slots change, so the lists are built again
+            next = new int[capacity];
+            previous = new int[capacity];
+            firstOfBalance = new int[firstOfBalance == null ? 16 : firstOfBalance.length];
+            Arrays.fill(firstOfBalance, -1);
+            maxBalance = 0;
+        }
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return "BalanceStore(" + size + " customers, capacity " + keys.length + (ranked ? ", ranked" : "") + ")";
+    }
+}
@@ -5,55 +5,310 @@ package com.example;
 
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
 import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
-import akka.japi.Pair;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 
 public class CashRegister extends AbstractBehavior<CashRegister.Request> {
+    // checks the level before getContext().getLog(), which sets up the MDC of the actor each time
+    private static final Logger log = LoggerFactory.getLogger(CashRegister.class);
+
+    // a hold expires within one tick after the reservation timeout, there are this many ticks per timeout
+    private static final int HOLD_TICKS = 8;
 
     //balance database
-    private final Pair<ActorRef<Customer.Response>, Integer>[] database = new Pair[4];
-    // private final Pair<ActorRef<Customer.Response>, Integer>[] database = new Pair[4];
-    private int newSlot = 0;
+    private final BalanceStore database;
+    private final EventSummary events;
+    // journal of the balances, null if they are only kept in memory
+    private final BalanceJournal journal;
+    // replies waiting for the commit of the balance changes before them
+    private final List<PendingReply<?>> pendingReplies = new ArrayList<>();
+    // credits held between the balance check and the coffee
+    private final CreditHolds holds = new CreditHolds(HOLD_TICKS);
 
     public interface Request {
     }
 
+    /**
+     * Entity type of the cash register shards in cluster mode; the entity id is the shard index.
+     */
+    public static final EntityTypeKey<Request> TYPE_KEY = EntityTypeKey.create(Request.class, "CashRegister");
+
     /**
      * Is triggered when the customer wants to recharge the balance.
      */
     public static final class Recharge implements Request {
-        public ActorRef<Customer.Response> sender;
+        public final ActorRef<Customer.Response> sender;
+        public final int customerId;
 
-        public Recharge(ActorRef<Customer.Response> sender) {
+        public Recharge(ActorRef<Customer.Response> sender, int customerId) {
             this.sender = sender;
+            this.customerId = customerId;
         }
     }
 
     /**
      * Is triggered when load balancer asks for the current balance of the customer.
+     * If the customer has enough money, one credit is held for the coffee.
      */
     public static final class State implements Request {
         public final ActorRef<LoadBalancer.Mixed> sender;
+        // where the load balancer answers the customer
         public final ActorRef<Customer.Response> ofWhom;
+        public final int customerId;
 
-        public State(ActorRef<LoadBalancer.Mixed> sender, ActorRef<Customer.Response> ofWhom) {
+        public State(ActorRef<LoadBalancer.Mixed> sender, ActorRef<Customer.Response> ofWhom, int customerId) {
             this.sender = sender;
             this.ofWhom = ofWhom;
+            this.customerId = customerId;
+        }
+    }
+
+    /**
+     * Is triggered when the coffee machine served the coffee a credit was held for. The held credit is taken.
+     */
+    public static final class CommitCredit implements Request {
+        public final int customerId;
+        public final long reservation;
+
+        public CommitCredit(int customerId, long reservation) {
+            this.customerId = customerId;
+            this.reservation = reservation;
+        }
+    }
+
+    /**
+     * Is triggered when the customer could not get the coffee a credit was held for. The held credit is given back.
+     */
+    public static final class ReleaseCredit implements Request {
+        public final int customerId;
+        public final long reservation;
+
+        public ReleaseCredit(int customerId, long reservation) {
+            this.customerId = customerId;
+            this.reservation = reservation;
+        }
+    }
+
+    /**
+     * Is triggered when load balancer asks for the balance of several customers at once.
+     * Each customer with enough money gets one credit held, as for {@link State}. The load balancer knows where
+     * to answer each customer, so the batch only has their ids.
+     */
+    public static final class StateBatch implements Request {
+        public final ActorRef<LoadBalancer.Mixed> sender;
+        private final int[] customerIds;
+
+        public StateBatch(ActorRef<LoadBalancer.Mixed> sender, int[] customerIds) {
+            this.sender = sender;
+            this.customerIds = customerIds.clone();
+        }
+
+        public int size() {
+            return customerIds.length;
+        }
+
+        public int customerId(int index) {
+            return customerIds[index];
+        }
+    }
+
+    /**
+     * Is triggered when the query API asks for a snapshot of the balances. The cash register answers right away
+     * from the totals it keeps up to date, without looking at every customer.
+     */
+    public static final class GetTotals implements Request {
+        public final ActorRef<Totals> replyTo;
+        // how many of the customers with the highest balances are wanted
+        public final int top;
+
+        public GetTotals(ActorRef<Totals> replyTo, int top) {
+            this.replyTo = replyTo;
+            this.top = top;
+        }
+    }
+
+    /**
+     * Snapshot of the balances of one shard, or merged from several shards by {@link #merge}. Customers recovered
+     * from the journal are counted once they show up again.
+     */
+    public static final class Totals {
+        public final long totalBalance;
+        public final int customers;
+        // credits held for coffees which are not served yet
+        public final int heldCredits;
+        // the customers with the highest balances, highest first; empty if the balances are not ranked
+        private final int[] topCustomers;
+        private final int[] topBalances;
+        // how many shards the snapshot covers
+        public final int shards;
+
+        public Totals(long totalBalance, int customers, int heldCredits, int[] topCustomers, int[] topBalances, int shards) {
+            this.totalBalance = totalBalance;
+            this.customers = customers;
+            this.heldCredits = heldCredits;
+            this.topCustomers = topCustomers.clone();
+            this.topBalances = topBalances.clone();
+            this.shards = shards;
+        }
+
+        /**
+         * @return how many of the customers with the highest balances the snapshot has
+         */
+        public int topSize() {
+            return topCustomers.length;
+        }
+
+        /**
+         * @param rank 0 for the customer with the highest balance
+         */
+        public int topCustomer(int rank) {
+            return topCustomers[rank];
+        }
+
+        public int topBalance(int rank) {
+            return topBalances[rank];
+        }
+
+        /**
+         * Adds up the snapshots of several shards and merges their highest balances.
+         *
+         * @param top how many of the highest balances are kept
+         */
+        public static Totals merge(List<Totals> parts, int top) {
+            long totalBalance = 0;
+            int customers = 0;
+            int heldCredits = 0;
+            int shards = 0;
+            int candidates = 0;
+            for (Totals part : parts) {
+                totalBalance += part.totalBalance;
+                customers += part.customers;
+                heldCredits += part.heldCredits;
+                shards += part.shards;
+                candidates += part.topCustomers.length;
+            }
+            int[] topCustomers = new int[Math.min(top, candidates)];
+            int[] topBalances = new int[topCustomers.length];
+            // every part is sorted already, the next highest is at the head of one of them
+            int[] heads = new int[parts.size()];
+            for (int i = 0; i < topCustomers.length; i++) {
+                int best = -1;
+                for (int p = 0; p < heads.length; p++) {
+                    Totals part = parts.get(p);
+                    if (heads[p] < part.topBalances.length
+                            && (best < 0 || part.topBalances[heads[p]] > parts.get(best).topBalances[heads[best]])) {
+                        best = p;
+                    }
+                }
+                topCustomers[i] = parts.get(best).topCustomers[heads[best]];
+                topBalances[i] = parts.get(best).topBalances[heads[best]];
+                heads[best]++;
+            }
+            return new Totals(totalBalance, customers, heldCredits, topCustomers, topBalances, shards);
+        }
+    }
+
+    /**
+     * Is triggered when the balance changes collected so far are committed to the journal.
+     */
+    private enum FlushJournal implements Request {
+        INSTANCE
+    }
+
+    /**
+     * Is triggered by the timer once per hold tick, to give back the credits whose reservation timed out.
+     */
+    private enum ExpireHolds implements Request {
+        INSTANCE
+    }
+
+    /**
+     * A reply which is sent once the balance change it reports is durable.
+     */
+    private static final class PendingReply<T> {
+        private final ActorRef<T> to;
+        private final T message;
+
+        private PendingReply(ActorRef<T> to, T message) {
+            this.to = to;
+            this.message = message;
+        }
+
+        private void send() {
+            to.tell(message);
         }
     }
 
+    /**
+     * @return a cash register which keeps the balances in memory only and holds credits for five seconds
+     */
     public static Behavior<Request> create() {
-        return Behaviors.setup(CashRegister::new);
+        return create(Duration.ofSeconds(5));
     }
 
-    private CashRegister(ActorContext<Request> context) {
-        super(context);
+    /**
+     * @return a cash register which keeps the balances in memory only
+     */
+    public static Behavior<Request> create(Duration reservationTimeout) {
+        return create(reservationTimeout, null, 0);
+    }
+
+    /**
+     * @param reservationTimeout how long a credit is held if neither commit nor release arrives
+     * @param journal            where the balances are journaled and recovered from on start, null to keep them in memory only
+     * @param shard              the shard whose journal is used
+     */
+    public static Behavior<Request> create(Duration reservationTimeout, BalanceJournal.Settings journal, int shard) {
+        return create(reservationTimeout, journal, shard, false);
+    }
 
+    /**
+     * @param reservationTimeout how long a credit is held if neither commit nor release arrives
+     * @param journal            where the balances are journaled and recovered from on start, null to keep them in memory only
+     * @param shard              the shard whose journal is used
+     * @param ranked             true to keep the balances ranked, for the highest balances in {@link Totals}
+     */
+    public static Behavior<Request> create(Duration reservationTimeout, BalanceJournal.Settings journal, int shard,
+                                           boolean ranked) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> {
+            if (journal == null) {
+                return new CashRegister(context, timers, reservationTimeout, null, ranked);
+            }
+            long start = System.nanoTime();
+            BalanceJournal recovered;
+            try {
+                recovered = BalanceJournal.open(journal, shard);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not recover the balances of shard " + shard, e);
+            }
+            context.getLog().info("Recovered {} customers and {} balance changes of shard {} in {} ms",
+                    recovered.customers(), recovered.recoveredEvents(), shard, (System.nanoTime() - start) / 1_000_000);
+            return new CashRegister(context, timers, reservationTimeout, recovered, ranked);
+        }));
+    }
+
+    private CashRegister(ActorContext<Request> context, TimerScheduler<Request> timers, Duration reservationTimeout,
+                         BalanceJournal journal, boolean ranked) {
+        super(context);
+        this.database = new BalanceStore(16, ranked);
+        this.events = EventSummary.get(context.getSystem());
+        this.journal = journal;
+        Duration tick = reservationTimeout.dividedBy(HOLD_TICKS);
+        timers.startTimerWithFixedDelay(ExpireHolds.INSTANCE, tick.isZero() ? Duration.ofMillis(1) : tick);
     }
 
     @Override
@@ -61,6 +316,13 @@ public class CashRegister extends AbstractBehavior<CashRegister.Request> {
         return newReceiveBuilder()
                 .onMessage(Recharge.class, this::onRecharge)
                 .onMessage(State.class, this::onState)
+                .onMessage(StateBatch.class, this::onStateBatch)
+                .onMessage(CommitCredit.class, this::onCommitCredit)
+                .onMessage(ReleaseCredit.class, this::onReleaseCredit)
+                .onMessage(GetTotals.class, this::onGetTotals)
+                .onMessage(ExpireHolds.class, command -> onExpireHolds())
+                .onMessage(FlushJournal.class, command -> onFlushJournal())
+                .onSignal(PostStop.class, signal -> onPostStop())
                 .build();
     }
 
@@ -71,25 +333,16 @@ public class CashRegister extends AbstractBehavior<CashRegister.Request> {
      * @return this
      */
     private Behavior<Request> onRecharge(Recharge request) {
-        getContext().getLog().info("Cash register got recharge request from {}", request.sender.path());
-        // if the customer is new to the system, we have to add him/her in the database
-        if (Arrays.stream(database).noneMatch(x -> ((x != null) && (x.first() == request.sender)))) {
-            database[newSlot] = new Pair<>(request.sender, 1);
-            request.sender.tell(new Customer.RechargeSuccess(request.sender, database[newSlot].second()));
-            newSlot++;
-        } else {
-            // else find the information of the customer in database
-            for (int i = 0; i < database.length; i++) {
-                Pair<ActorRef<Customer.Response>, Integer> info = database[i];
-                if ((info != null) && (info.first().equals(request.sender))) {
-                    info = new Pair<>(info.first(), info.second() + 1);
-                    database[i] = info;
-                    // cash register sends a message with the new balance
-                    request.sender.tell(new Customer.RechargeSuccess(info.first(), info.second()));
-                    break;
-                }
-            }
+        if (log.isDebugEnabled()) {
+            getContext().getLog().debug("Cash register got recharge request from customer {}", request.customerId);
         }
+        events.record(EventSummary.Event.RECHARGED);
+        adopt(request.customerId);
+        // unknown customers are added to the database with their first credit
+        int balance = database.add(request.customerId, 1);
+        journal(request.customerId, balance);
+        // cash register sends a message with the new balance
+        reply(request.sender, new Customer.RechargeSuccess(request.customerId, balance));
         return this;
     }
 
@@ -100,23 +353,210 @@ public class CashRegister extends AbstractBehavior<CashRegister.Request> {
      * @return this
      */
     private Behavior<Request> onState(State request) {
-        if (Arrays.stream(database).anyMatch((x -> (x != null) && (x.first() == request.ofWhom)))) {
-            for (int i = 0; i < database.length; i++) {
-                Pair<ActorRef<Customer.Response>, Integer> info = database[i];
-                if ((info != null) && (info.first() == request.ofWhom)) {
-                    if (info.second() > 0) {
-                        // after confirming that the customer has enough money, credit is then decremented
-                        info = new Pair<>(request.ofWhom, info.second() - 1);
-                        database[i] = info;
-                        request.sender.tell(new LoadBalancer.CreditSuccess(this.getContext().getSelf(), request.ofWhom));
-                    } else {
-                        request.sender.tell(new LoadBalancer.CreditFail(this.getContext().getSelf(), request.ofWhom));
-                    }
+        adopt(request.customerId);
+        // after confirming that the customer has enough money, one credit is held until the coffee is served
+        long reservation = hold(request.customerId);
+        if (reservation >= 0) {
+            events.record(EventSummary.Event.CREDIT_SUCCESS);
+            reply(request.sender, new LoadBalancer.CreditSuccess(request.ofWhom, request.customerId, reservation));
+        } else {
+            events.record(EventSummary.Event.CREDIT_FAIL);
+            reply(request.sender, new LoadBalancer.CreditFail(request.ofWhom, request.customerId));
+        }
+        return this;
+    }
+
+    /**
+     * The cash register holds a credit for every customer of the batch who has enough money and answers with
+     * one message, whose bit set marks the customers who got the credit.
+     *
+     * @param request Request for the money state of several customers
+     * @return this
+     */
+    private Behavior<Request> onStateBatch(StateBatch request) {
+        int[] customers = new int[request.size()];
+        BitSet granted = new BitSet(customers.length);
+        long[] reservations = new long[customers.length];
+        for (int i = 0; i < customers.length; i++) {
+            int customer = request.customerId(i);
+            customers[i] = customer;
+            adopt(customer);
+            reservations[i] = hold(customer);
+            if (reservations[i] >= 0) {
+                events.record(EventSummary.Event.CREDIT_SUCCESS);
+                granted.set(i);
+            } else {
+                events.record(EventSummary.Event.CREDIT_FAIL);
+            }
+        }
+        reply(request.sender, new LoadBalancer.CreditBatch(customers, granted, reservations));
+        return this;
+    }
+
+    /**
+     * The coffee was served, the cash register takes the held credit from the balance.
+     * A coffee served after its reservation timed out is charged anyway if the customer still has the money.
+     *
+     * @param request Contains the customer and the reservation
+     * @return this
+     */
+    private Behavior<Request> onCommitCredit(CommitCredit request) {
+        adopt(request.customerId);
+        if (holds.settle(request.reservation) == 0 && available(request.customerId) <= 0) {
+            getContext().getLog().warn("Customer {} got a coffee after reservation {} timed out and cannot pay for it",
+                    request.customerId, request.reservation);
+            return this;
+        }
+        int balance = database.add(request.customerId, -1);
+        journal(request.customerId, balance);
+        return this;
+    }
+
+    /**
+     * The coffee was not served, the cash register gives the held credit back.
+     *
+     * @param request Contains the customer and the reservation
+     * @return this
+     */
+    private Behavior<Request> onReleaseCredit(ReleaseCredit request) {
+        if (holds.settle(request.reservation) != 0) {
+            events.record(EventSummary.Event.CREDIT_RELEASED);
+        }
+        return this;
+    }
+
+    /**
+     * The cash register reports its totals and the customers with the highest balances. The totals are kept up to
+     * date with every change and the ranked balances are read from the top, so the answer takes no longer with more
+     * customers. It is not a balance change and is not held back for the journal.
+     *
+     * @param request Contains where the snapshot goes and how many customers are ranked
+     * @return this
+     */
+    private Behavior<Request> onGetTotals(GetTotals request) {
+        int top = database.ranked() ? Math.min(Math.max(0, request.top), database.size()) : 0;
+        int[] topCustomers = new int[top];
+        int[] topBalances = new int[top];
+        if (top > 0) {
+            database.top(topCustomers, topBalances);
+        }
+        request.replyTo.tell(new Totals(database.total(), database.size(), holds.outstanding(), topCustomers, topBalances, 1));
+        return this;
+    }
+
+    /**
+     * One hold tick is over, the credits whose reservation timed out are given back.
+     *
+     * @return this
+     */
+    private Behavior<Request> onExpireHolds() {
+        int expired = holds.tick(customer -> events.record(EventSummary.Event.CREDIT_EXPIRED));
+        if (expired > 0 && log.isDebugEnabled()) {
+            getContext().getLog().debug("{} credit reservations timed out, {} still held", expired, holds.outstanding());
+        }
+        return this;
+    }
+
+    /**
+     * Holds one credit for the customer if the balance covers it.
+     *
+     * @return the reservation id, or -1 if the customer doesn't have enough money
+     */
+    private long hold(int customer) {
+        return available(customer) > 0 ? holds.hold(customer) : -1;
+    }
+
+    /**
+     * @return the balance of the customer which is not held
+     */
+    private int available(int customer) {
+        return database.get(customer) - holds.held(customer);
+    }
+
+    /**
+     * The cash register makes the balance changes collected since the last commit durable and sends their replies.
+     * The flush message is queued behind the requests which arrived in the meantime, so under load one fsync
+     * covers many changes and when idle a change is committed right away.
+     *
+     * @return this
+     */
+    private Behavior<Request> onFlushJournal() {
+        if (journal.uncommitted() > 0 || !pendingReplies.isEmpty()) {
+            commit();
+        }
+        return this;
+    }
+
+    private Behavior<Request> onPostStop() {
+        if (journal != null) {
+            try {
+                journal.close();
+                // the close committed the last changes
+                for (PendingReply<?> reply : pendingReplies) {
+                    reply.send();
                 }
+            } catch (IOException e) {
+                getContext().getLog().warn("Could not close the balance journal", e);
             }
-        } else {
-            request.sender.tell(new LoadBalancer.CreditFail(this.getContext().getSelf(), request.ofWhom));
+            pendingReplies.clear();
         }
         return this;
     }
-}
\ No newline at end of file
+
+    /**
+     * Takes over the balance a customer had before a restart, the first time the customer shows up.
+     */
+    private void adopt(int customer) {
+        if (journal != null && !database.contains(customer)) {
+            int recovered = journal.adopt(customer);
+            if (recovered >= 0) {
+                database.add(customer, recovered);
+            }
+        }
+    }
+
+    /**
+     * Journals the change; the first change after a commit queues the flush which commits it, so changes without
+     * a reply of their own, like a committed credit, are made durable as well. A full batch is committed right away.
+     */
+    private void journal(int customer, int balance) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.balanceChanged(customer, balance);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not journal the balance of customer " + customer, e);
+        }
+        if (journal.uncommitted() >= journal.maxBatch()) {
+            commit();
+        } else if (journal.uncommitted() == 1) {
+            getContext().getSelf().tell(FlushJournal.INSTANCE);
+        }
+    }
+
+    /**
+     * Sends the reply right away without a journal, otherwise after the changes before it are committed.
+     * Replies without a change of their own wait as well, so every reply keeps its order.
+     */
+    private <T> void reply(ActorRef<T> to, T message) {
+        if (journal == null || (pendingReplies.isEmpty() && journal.uncommitted() == 0)) {
+            to.tell(message);
+            return;
+        }
+        // the first change after the last commit queued the flush which sends it
+        pendingReplies.add(new PendingReply<>(to, message));
+    }
+
+    private void commit() {
+        try {
+            journal.commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not commit the balance journal", e);
+        }
+        for (PendingReply<?> reply : pendingReplies) {
+            reply.send();
+        }
+        pendingReplies.clear();
+    }
+}
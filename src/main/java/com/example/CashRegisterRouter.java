@@ -0,0 +1,306 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.cluster.sharding.typed.ShardingEnvelope;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Front of the sharded cash register tier. It speaks the normal {@link CashRegister.Request} protocol
+ * and forwards every request to the shard that owns the customer. Each customer always maps to the
+ * same shard, so the requests of one customer keep their order while different customers are served in parallel.
+ * The shards are either children of the router or, in cluster mode, entities of Cluster Sharding on the backend nodes.
+ */
+public class CashRegisterRouter extends AbstractBehavior<CashRegister.Request> {
+
+    // how long the totals of the shards are collected, shards which did not answer by then are left out
+    private static final Duration TOTALS_TIMEOUT = Duration.ofSeconds(2);
+
+    private final int shardCount;
+    // local shards, null in cluster mode
+    private final ActorRef<CashRegister.Request>[] shards;
+    // cluster mode: the sharding region and the entity id of every shard
+    private final ActorRef<ShardingEnvelope<CashRegister.Request>> region;
+    private final String[] entityIds;
+
+    /**
+     * @return a router whose shards keep the balances in memory only
+     */
+    public static Behavior<CashRegister.Request> create(int shardCount) {
+        return create(shardCount, (BalanceJournal.Settings) null);
+    }
+
+    /**
+     * @param journal where the shards journal their balances, null to keep them in memory only
+     */
+    public static Behavior<CashRegister.Request> create(int shardCount, BalanceJournal.Settings journal) {
+        return create(shardCount, journal, Duration.ofSeconds(5));
+    }
+
+    /**
+     * @param journal            where the shards journal their balances, null to keep them in memory only
+     * @param reservationTimeout how long the shards hold a credit if neither commit nor release arrives
+     */
+    public static Behavior<CashRegister.Request> create(int shardCount, BalanceJournal.Settings journal, Duration reservationTimeout) {
+        return create(shardCount, journal, reservationTimeout, false);
+    }
+
+    /**
+     * @param journal            where the shards journal their balances, null to keep them in memory only
+     * @param reservationTimeout how long the shards hold a credit if neither commit nor release arrives
+     * @param ranked             true if the shards keep their balances ranked, for the highest balances in the totals
+     */
+    public static Behavior<CashRegister.Request> create(int shardCount, BalanceJournal.Settings journal, Duration reservationTimeout,
+                                                        boolean ranked) {
+        return Behaviors.setup(context -> new CashRegisterRouter(context, shardCount, journal, reservationTimeout, ranked));
+    }
+
+    /**
+     * Creates a router for the cash register entities of Cluster Sharding, with entity ids 0 to shardCount - 1.
+     *
+     * @param region the sharding region, or its proxy on nodes which host no cash register
+     */
+    public static Behavior<CashRegister.Request> create(int shardCount, ActorRef<ShardingEnvelope<CashRegister.Request>> region) {
+        return Behaviors.setup(context -> new CashRegisterRouter(context, shardCount, region));
+    }
+
+    @SuppressWarnings("unchecked")
+    private CashRegisterRouter(ActorContext<CashRegister.Request> context, int shardCount, BalanceJournal.Settings journal,
+                               Duration reservationTimeout, boolean ranked) {
+        super(context);
+        checkShardCount(shardCount);
+        this.shardCount = shardCount;
+        this.region = null;
+        this.entityIds = null;
+        if (journal != null) {
+            try {
+                BalanceJournal.checkShardCount(journal, shardCount);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read the journal directory " + journal.directory, e);
+            }
+        }
+        ShopMetrics metrics = ShopMetrics.get(context.getSystem());
+        RoleDispatchers dispatchers = RoleDispatchers.get(context.getSystem());
+        shards = new ActorRef[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = context.spawn(metrics.instrument(ShopMetrics.Role.CASH_REGISTER, CashRegister.create(reservationTimeout, journal, i, ranked)),
+                    "CashRegisterShard" + i, dispatchers.props(ShopMetrics.Role.CASH_REGISTER, metrics.props(ShopMetrics.Role.CASH_REGISTER)));
+        }
+    }
+
+    private CashRegisterRouter(ActorContext<CashRegister.Request> context, int shardCount,
+                               ActorRef<ShardingEnvelope<CashRegister.Request>> region) {
+        super(context);
+        checkShardCount(shardCount);
+        this.shardCount = shardCount;
+        this.shards = null;
+        this.region = region;
+        entityIds = new String[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            entityIds[i] = Integer.toString(i);
+        }
+    }
+
+    private static void checkShardCount(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be at least 1, was " + shardCount);
+        }
+    }
+
+    @Override
+    public Receive<CashRegister.Request> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(CashRegister.Recharge.class, this::onRecharge)
+                .onMessage(CashRegister.State.class, this::onState)
+                .onMessage(CashRegister.StateBatch.class, this::onStateBatch)
+                .onMessage(CashRegister.GetTotals.class, this::onGetTotals)
+                .onMessage(CashRegister.CommitCredit.class, request -> {
+                    send(shardIndex(request.customerId, shardCount), request);
+                    return this;
+                })
+                .onMessage(CashRegister.ReleaseCredit.class, request -> {
+                    send(shardIndex(request.customerId, shardCount), request);
+                    return this;
+                })
+                .build();
+    }
+
+    /**
+     * Forwards a recharge to the shard owning the customer.
+     *
+     * @param request Contains the request for a recharge
+     * @return this
+     */
+    private Behavior<CashRegister.Request> onRecharge(CashRegister.Recharge request) {
+        send(shardIndex(request.customerId, shardCount), request);
+        return this;
+    }
+
+    /**
+     * Forwards a balance check to the shard owning the customer.
+     *
+     * @param request Request for money state from customer
+     * @return this
+     */
+    private Behavior<CashRegister.Request> onState(CashRegister.State request) {
+        send(shardIndex(request.customerId, shardCount), request);
+        return this;
+    }
+
+    /**
+     * Splits a batch of balance checks into one batch per shard. Every shard answers the load balancer
+     * for its part of the batch.
+     *
+     * @param request Request for the money state of several customers
+     * @return this
+     */
+    private Behavior<CashRegister.Request> onStateBatch(CashRegister.StateBatch request) {
+        if (shardCount == 1) {
+            send(0, request);
+            return this;
+        }
+        int size = request.size();
+        int[] shardOf = new int[size];
+        int[] sizes = new int[shardCount];
+        for (int i = 0; i < size; i++) {
+            shardOf[i] = shardIndex(request.customerId(i), shardCount);
+            sizes[shardOf[i]]++;
+        }
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (sizes[shard] == 0) {
+                continue;
+            }
+            int[] ids = new int[sizes[shard]];
+            int next = 0;
+            for (int i = 0; i < size; i++) {
+                if (shardOf[i] == shard) {
+                    ids[next++] = request.customerId(i);
+                }
+            }
+            send(shard, new CashRegister.StateBatch(request.sender, ids));
+        }
+        return this;
+    }
+
+    /**
+     * Asks every shard for its totals. A child collects the answers and replies with the merged totals.
+     *
+     * @param request Contains where the totals go and how many customers are ranked
+     * @return this
+     */
+    private Behavior<CashRegister.Request> onGetTotals(CashRegister.GetTotals request) {
+        getContext().spawnAnonymous(TotalsMerger.create(request.replyTo, request.top, shardCount, merger -> {
+            for (int shard = 0; shard < shardCount; shard++) {
+                send(shard, new CashRegister.GetTotals(merger, request.top));
+            }
+        }));
+        return this;
+    }
+
+    private void send(int shard, CashRegister.Request request) {
+        if (shards != null) {
+            shards[shard].tell(request);
+        } else {
+            region.tell(new ShardingEnvelope<>(entityIds[shard], request));
+        }
+    }
+
+    /**
+     * The shard is chosen by the id of the customer, which stays the same after a restart, so a customer finds
+     * the shard with its journaled balance again. The id is spread by a multiplicative hash, so consecutive ids
+     * land on different shards; its constants differ from the ones of {@link BalanceStore}, or all customers of a
+     * shard would share the low bits of their slot and crowd one part of the shard's table.
+     *
+     * @return the index of the shard owning the customer
+     */
+    static int shardIndex(int customerId, int shardCount) {
+        int h = customerId * 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return Math.floorMod(h ^ (h >>> 16), shardCount);
+    }
+
+    /**
+     * Collects the totals of every shard for one {@link CashRegister.GetTotals} and stops after replying with the
+     * merged totals. Shards which don't answer in time are left out, the reply says how many shards it covers.
+     */
+    private static final class TotalsMerger extends AbstractBehavior<TotalsMerger.Command> {
+
+        private interface Command {
+        }
+
+        private static final class ShardTotals implements Command {
+            private final CashRegister.Totals totals;
+
+            private ShardTotals(CashRegister.Totals totals) {
+                this.totals = totals;
+            }
+        }
+
+        private enum Timeout implements Command {
+            INSTANCE
+        }
+
+        private final ActorRef<CashRegister.Totals> replyTo;
+        private final int top;
+        private final int shardCount;
+        private final List<CashRegister.Totals> parts;
+
+        /**
+         * @param ask sends the request for the totals to every shard, with the given reply address
+         */
+        static Behavior<Command> create(ActorRef<CashRegister.Totals> replyTo, int top, int shardCount,
+                                        Consumer<ActorRef<CashRegister.Totals>> ask) {
+            return Behaviors.setup(context -> Behaviors.withTimers(timers -> {
+                timers.startSingleTimer(Timeout.INSTANCE, TOTALS_TIMEOUT);
+                ask.accept(context.messageAdapter(CashRegister.Totals.class, ShardTotals::new));
+                return new TotalsMerger(context, replyTo, top, shardCount);
+            }));
+        }
+
+        private TotalsMerger(ActorContext<Command> context, ActorRef<CashRegister.Totals> replyTo, int top, int shardCount) {
+            super(context);
+            this.replyTo = replyTo;
+            this.top = top;
+            this.shardCount = shardCount;
+            this.parts = new ArrayList<>(shardCount);
+        }
+
+        @Override
+        public Receive<Command> createReceive() {
+            return newReceiveBuilder()
+                    .onMessage(ShardTotals.class, this::onShardTotals)
+                    .onMessage(Timeout.class, command -> reply())
+                    .build();
+        }
+
+        /**
+         * One shard answered, the merged totals are sent once all of them did.
+         *
+         * @param command Contains the totals of the shard
+         * @return this, or stopped after the reply
+         */
+        private Behavior<Command> onShardTotals(ShardTotals command) {
+            parts.add(command.totals);
+            return parts.size() < shardCount ? this : reply();
+        }
+
+        private Behavior<Command> reply() {
+            replyTo.tell(CashRegister.Totals.merge(parts, top));
+            return Behaviors.stopped();
+        }
+    }
+}
@@ -10,46 +10,177 @@ import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.actor.typed.receptionist.ServiceKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
 
 public class CoffeeMachine extends AbstractBehavior<CoffeeMachine.Request> {
+    // for the level check on the hot path, see LoadBalancer
+    private static final Logger log = LoggerFactory.getLogger(CoffeeMachine.class);
+
     private int remainingCoffee;
+    // number of get requests answered so far, success or not
+    private long handled;
+
+    // load balancers which want to know about every supply change
+    private final List<ActorRef<LoadBalancer.Mixed>> subscribers = new ArrayList<>();
+    // zero means every change is reported immediately, otherwise changes are reported once per interval
+    private final Duration reportInterval;
+    private boolean changedSinceReport = false;
+    // true while the replenisher refills the machine, load balancers send customers elsewhere meanwhile
+    private boolean refilling = false;
+    // cups per second, used by load balancers that weigh machines by speed
+    private final double brewRate;
+    private final EventSummary events;
+
+    // zero serves every request right away, otherwise requests wait for the next brew cycle
+    private final Duration brewDuration;
+    // cups brewed per cycle
+    private final int batchCapacity;
+    private final Queue<GetCoffee> waiting = new ArrayDeque<>();
+    private boolean brewing = false;
+    private final TimerScheduler<Request> timers;
 
     public interface Request {
     }
 
     /**
-     * Is triggered when the load balancer asks for the amount of remaining coffee in the machines.
+     * Key the machines register with the receptionist in cluster mode, so load balancers on every node find them.
+     */
+    public static final ServiceKey<Request> SERVICE_KEY = ServiceKey.create(Request.class, "CoffeeMachine");
+
+    /**
+     * Is triggered when the load balancer subscribes to the supply reports of the machine.
      */
     public static final class GiveSupply implements Request {
-        public ActorRef<LoadBalancer.Mixed> sender;
-        public ActorRef<Customer.Response> ofWhom;
-        public ActorRef<Request> coffeeMachine;
+        public final ActorRef<LoadBalancer.Mixed> sender;
 
-        public GiveSupply(ActorRef<LoadBalancer.Mixed> sender, ActorRef<Customer.Response> ofWhom, ActorRef<Request> coffeeMachine) {
+        public GiveSupply(ActorRef<LoadBalancer.Mixed> sender) {
             this.sender = sender;
-            this.ofWhom = ofWhom;
-            this.coffeeMachine = coffeeMachine;
         }
     }
 
     /**
-     * Is triggered when the customer asks the coffee machine directly for a coffee (after being checked).
+     * Is triggered when a checked customer orders a coffee, sent by the customer or forwarded by the load balancer.
+     * The machine commits the credit held under the reservation if it serves the coffee and releases it otherwise.
      */
     public static final class GetCoffee implements Request {
         public final ActorRef<Customer.Response> sender;
+        public final int customerId;
+        // null if there is no held credit to settle
+        public final ActorRef<CashRegister.Request> cashRegister;
+        public final long reservation;
 
-        public GetCoffee(ActorRef<Customer.Response> sender) {
+        public GetCoffee(ActorRef<Customer.Response> sender, int customerId) {
+            this(sender, customerId, null, -1);
+        }
+
+        public GetCoffee(ActorRef<Customer.Response> sender, int customerId, ActorRef<CashRegister.Request> cashRegister,
+                         long reservation) {
             this.sender = sender;
+            this.customerId = customerId;
+            this.cashRegister = cashRegister;
+            this.reservation = reservation;
+        }
+    }
+
+    /**
+     * Is triggered when the query API asks for the current supply and queue of the machine. The answer is a supply
+     * report for the asker only; the subscribers are not told.
+     */
+    public static final class GetStatus implements Request {
+        public final ActorRef<LoadBalancer.GetSupply> replyTo;
+
+        public GetStatus(ActorRef<LoadBalancer.GetSupply> replyTo) {
+            this.replyTo = replyTo;
+        }
+    }
+
+    /**
+     * Is triggered when the replenisher starts to refill the machine.
+     */
+    public enum StartRefill implements Request {
+        INSTANCE
+    }
+
+    /**
+     * Is triggered when the replenisher is done refilling the machine up to the given number of cups.
+     */
+    public static final class Refill implements Request {
+        public final int level;
+
+        public Refill(int level) {
+            this.level = level;
         }
     }
 
+    /**
+     * Is triggered by the timer when the report interval is over.
+     */
+    private enum ReportSupply implements Request {
+        INSTANCE
+    }
+
+    /**
+     * Is triggered by the timer when a brew cycle is done.
+     */
+    private enum BrewDone implements Request {
+        INSTANCE
+    }
+
+    /**
+     * Creates a machine which reports every change of its supply right away.
+     */
     public static Behavior<Request> create(int remainingCoffee) {
-        return Behaviors.setup(context -> new CoffeeMachine(context, remainingCoffee));
+        return create(remainingCoffee, Duration.ZERO);
     }
 
-    private CoffeeMachine(ActorContext<Request> context, int remainingCoffee) {
+    /**
+     * Creates a machine which reports changes of its supply at most once per report interval.
+     */
+    public static Behavior<Request> create(int remainingCoffee, Duration reportInterval) {
+        return create(remainingCoffee, reportInterval, 1.0);
+    }
+
+    /**
+     * Creates a machine which brews the given number of cups per second.
+     */
+    public static Behavior<Request> create(int remainingCoffee, Duration reportInterval, double brewRate) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new CoffeeMachine(context, timers, remainingCoffee, reportInterval, brewRate, Duration.ZERO, 1)));
+    }
+
+    /**
+     * Creates a machine which brews up to {@code batchCapacity} cups per cycle of {@code brewDuration}.
+     * Requests wait in the machine's queue until a cycle is done; a cycle starts as soon as a request
+     * waits and the previous cycle is over. A zero brew duration serves every request right away.
+     */
+    public static Behavior<Request> create(int remainingCoffee, Duration reportInterval, Duration brewDuration, int batchCapacity) {
+        double brewRate = brewDuration.isZero() ? 1.0 : batchCapacity * 1e9 / brewDuration.toNanos();
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new CoffeeMachine(context, timers, remainingCoffee, reportInterval, brewRate, brewDuration, batchCapacity)));
+    }
+
+    private CoffeeMachine(ActorContext<Request> context, TimerScheduler<Request> timers, int remainingCoffee,
+                          Duration reportInterval, double brewRate, Duration brewDuration, int batchCapacity) {
         super(context);
+        this.timers = timers;
         this.remainingCoffee = remainingCoffee;
+        this.reportInterval = reportInterval;
+        this.brewRate = brewRate;
+        this.brewDuration = brewDuration;
+        this.batchCapacity = Math.max(1, batchCapacity);
+        this.events = EventSummary.get(context.getSystem());
+        if (!reportInterval.isZero()) {
+            timers.startTimerWithFixedDelay(ReportSupply.INSTANCE, reportInterval);
+        }
     }
 
     @Override
@@ -57,36 +188,175 @@ public class CoffeeMachine extends AbstractBehavior<CoffeeMachine.Request> {
         return newReceiveBuilder()
                 .onMessage(GiveSupply.class, this::onGiveSupply)
                 .onMessage(GetCoffee.class, this::onGetCoffee)
+                .onMessage(GetStatus.class, this::onGetStatus)
+                .onMessageEquals(StartRefill.INSTANCE, this::onStartRefill)
+                .onMessage(Refill.class, this::onRefill)
+                .onMessageEquals(BrewDone.INSTANCE, this::onBrewDone)
+                .onMessageEquals(ReportSupply.INSTANCE, this::onReportSupply)
                 .build();
     }
 
     /**
-     * This coffee machine tells load balancer the remaining supply.
+     * The load balancer subscribes to this machine; it gets the current supply right away.
      *
      * @param response Contains supply request from load balancer
      * @return this
      */
     private Behavior<Request> onGiveSupply(GiveSupply response) {
-        getContext().getLog().info("{} got a supply request from load balancer (remaining coffee: {})",
+        getContext().getLog().info("{} got a supply subscription from load balancer (remaining coffee: {})",
                 this.getContext().getSelf().path(), remainingCoffee);
-        response.sender.tell(new LoadBalancer.GetSupply(this.getContext().getSelf(), response.ofWhom, this.remainingCoffee));
+        if (!subscribers.contains(response.sender)) {
+            subscribers.add(response.sender);
+        }
+        response.sender.tell(new LoadBalancer.GetSupply(this.getContext().getSelf(), this.remainingCoffee, handled, brewRate, refilling, waiting.size()));
+        return this;
+    }
+
+    /**
+     * The machine reports its supply and the requests waiting for a brew cycle.
+     *
+     * @param request Contains where the report goes
+     * @return this
+     */
+    private Behavior<Request> onGetStatus(GetStatus request) {
+        request.replyTo.tell(new LoadBalancer.GetSupply(this.getContext().getSelf(), remainingCoffee, handled, brewRate,
+                refilling, waiting.size()));
         return this;
     }
 
     /**
      * This coffee machine reacts to the customer who asks the machine directly for coffee.
+     * Without a brew duration the coffee is served right away, otherwise the request waits for the next brew cycle.
      * @param request Contains a "Get-Coffee"-Request for the amount coffee
      * @return this
      */
     private Behavior<Request> onGetCoffee(GetCoffee request) {
-        getContext().getLog().info("{} got a get request from {} (remaining coffee: {})", this.getContext().getSelf(), request.sender.path(), remainingCoffee);
-        if (this.remainingCoffee > 0) {
+        if (log.isDebugEnabled()) {
+            getContext().getLog().debug("{} got a get request from customer {} (remaining coffee: {}, queued: {})",
+                    this.getContext().getSelf(), request.customerId, remainingCoffee, waiting.size());
+        }
+        if (brewDuration.isZero()) {
+            serve(request);
+            supplyChanged();
+            return this;
+        }
+        waiting.add(request);
+        if (!brewing) {
+            startBrewing();
+        }
+        // the queue is reported when it needs one more brew cycle, not for every request
+        if ((waiting.size() - 1) % batchCapacity == 0) {
+            supplyChanged();
+        }
+        return this;
+    }
+
+    /**
+     * A brew cycle is done: up to a batch of waiting customers get their coffee, and the next cycle starts
+     * if more are waiting.
+     *
+     * @return this
+     */
+    private Behavior<Request> onBrewDone() {
+        brewing = false;
+        int batch = Math.min(batchCapacity, waiting.size());
+        for (int i = 0; i < batch; i++) {
+            serve(waiting.poll());
+        }
+        if (!waiting.isEmpty()) {
+            startBrewing();
+        }
+        supplyChanged();
+        return this;
+    }
+
+    private void startBrewing() {
+        brewing = true;
+        timers.startSingleTimer(BrewDone.INSTANCE, brewDuration);
+    }
+
+    /**
+     * Serves the request and settles its held credit.
+     */
+    private void serve(GetCoffee request) {
+        boolean served = dispense(request.sender, request.customerId);
+        if (request.cashRegister != null) {
+            request.cashRegister.tell(served
+                    ? new CashRegister.CommitCredit(request.customerId, request.reservation)
+                    : new CashRegister.ReleaseCredit(request.customerId, request.reservation));
+        }
+    }
+
+    /**
+     * @return true if the customer got a coffee
+     */
+    private boolean dispense(ActorRef<Customer.Response> customer, int customerId) {
+        handled++;
+        boolean served = this.remainingCoffee > 0;
+        if (served) {
             this.remainingCoffee -= 1;
-            request.sender.tell(new Customer.GetSuccess(request.sender));
+            events.record(EventSummary.Event.COFFEE_SERVED);
+            customer.tell(Customer.GetSuccess.of(customerId));
         } else {
             // the machine runs out of coffee
-            request.sender.tell(new Customer.GetFail(request.sender));
+            events.record(EventSummary.Event.MACHINE_EMPTY);
+            customer.tell(Customer.GetFail.of(customerId));
+        }
+        return served;
+    }
+
+    /**
+     * The replenisher starts the refill. The machine still serves what it has, but tells its subscribers
+     * right away so they stop sending customers.
+     *
+     * @return this
+     */
+    private Behavior<Request> onStartRefill() {
+        refilling = true;
+        reportSupply();
+        return this;
+    }
+
+    /**
+     * The refill is done, the machine has at least the given number of cups again.
+     *
+     * @param request Contains the new number of cups
+     * @return this
+     */
+    private Behavior<Request> onRefill(Refill request) {
+        refilling = false;
+        remainingCoffee = Math.max(remainingCoffee, request.level);
+        reportSupply();
+        return this;
+    }
+
+    /**
+     * Reports the supply to the subscribers if it changed during the last interval.
+     *
+     * @return this
+     */
+    private Behavior<Request> onReportSupply() {
+        if (changedSinceReport) {
+            reportSupply();
         }
         return this;
     }
+
+    private void supplyChanged() {
+        if (reportInterval.isZero()) {
+            reportSupply();
+        } else {
+            changedSinceReport = true;
+        }
+    }
+
+    private void reportSupply() {
+        changedSinceReport = false;
+        // the report is immutable, every subscriber gets the same one
+        LoadBalancer.GetSupply report = new LoadBalancer.GetSupply(this.getContext().getSelf(), remainingCoffee, handled,
+                brewRate, refilling, waiting.size());
+        for (int i = 0; i < subscribers.size(); i++) {
+            subscribers.get(i).tell(report);
+        }
+    }
 }
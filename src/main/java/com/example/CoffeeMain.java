@@ -2,63 +2,269 @@ package com.example;
 
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.Props;
 import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.actor.typed.receptionist.Receptionist;
+import akka.actor.typed.receptionist.ServiceKey;
+import akka.cluster.sharding.typed.ShardingEnvelope;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
+import akka.cluster.typed.Cluster;
 
-public class CoffeeMain extends AbstractBehavior<CoffeeMain.StartMessage> {
-    public static class StartMessage {
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+public class CoffeeMain extends AbstractBehavior<CoffeeMain.Command> {
+    public interface Command {
+    }
+
+    public static final class StartMessage implements Command {
+    }
+
+    /**
+     * Is triggered when the next batch of customers enters the shop.
+     */
+    private static final class SpawnCustomers implements Command {
+        private final int from;
+
+        private SpawnCustomers(int from) {
+            this.from = from;
+        }
     }
 
+    private final CoffeeSettings settings;
+    private final ShopMetrics metrics;
+    private final RoleDispatchers dispatchers;
+    private final TimerScheduler<Command> timers;
+    private long startNanos;
+    // every customer and the machine selection get a generator split off this one, in spawn order
+    private SplittableRandom random;
+    // the actors of the customers the arrivals of the open-loop load go to, customers or customer populations
+    private ActorRef<Customer.Response>[] customers;
+
     ActorRef<CashRegister.Request> cashRegister;
 
-    ActorRef<CoffeeMachine.Request> machine1;
-    ActorRef<CoffeeMachine.Request> machine2;
-    ActorRef<CoffeeMachine.Request> machine3;
+    ActorRef<CoffeeMachine.Request>[] machines;
 
     ActorRef<LoadBalancer.Mixed> loadBalancer;
 
-    ActorRef<Customer.Response> customer1;
-    ActorRef<Customer.Response> customer2;
-    ActorRef<Customer.Response> customer3;
-    ActorRef<Customer.Response> customer4;
-
-    public static Behavior<StartMessage> create() {
-        return Behaviors.setup(CoffeeMain::new);
+    public static Behavior<Command> create() {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new CoffeeMain(context, timers, CoffeeSettings.fromConfig(context.getSystem().settings().config()))));
     }
 
-    private CoffeeMain(ActorContext<StartMessage> context) {
+    private CoffeeMain(ActorContext<Command> context, TimerScheduler<Command> timers, CoffeeSettings settings) {
         super(context);
+        this.timers = timers;
+        this.settings = settings;
+        this.metrics = ShopMetrics.get(context.getSystem());
+        this.dispatchers = RoleDispatchers.get(context.getSystem());
     }
 
     @Override
-    public Receive<StartMessage> createReceive() {
-        return newReceiveBuilder().onMessage(StartMessage.class, this::onStartMessage).build();
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(StartMessage.class, this::onStartMessage)
+                .onMessage(SpawnCustomers.class, this::onSpawnCustomers)
+                .build();
     }
 
-    private Behavior<StartMessage> onStartMessage(StartMessage command) throws InterruptedException {
+    @SuppressWarnings("unchecked")
+    private Behavior<Command> onStartMessage(StartMessage command) {
+        startNanos = System.nanoTime();
+        long seed = settings.randomSeed != 0 ? settings.randomSeed : new SplittableRandom().nextLong();
+        getContext().getLog().info("Random seed {}", seed);
+        random = new SplittableRandom(seed);
+        if (settings.openLoop()) {
+            customers = new ActorRef[(settings.customers + customersPerActor() - 1) / customersPerActor()];
+        }
+        if (settings.cluster) {
+            return startClusterNode();
+        }
+
+        // cash register which determines if enough balance is given, sharded by customer
+        cashRegister = getContext().spawn(
+                metrics.instrument(ShopMetrics.Role.CASH_REGISTER_ROUTER, CashRegisterRouter.create(settings.cashRegisterShards, settings.journal,
+                        settings.reservationTimeout, settings.queryEnabled)),
+                "CashRegister", props(ShopMetrics.Role.CASH_REGISTER_ROUTER));
+
+        spawnMachines();
+        spawnLoadBalancer(null);
+        startQueryServer();
+
+        // customers enter the shop in batches, so the root actor never has more than one spawn message queued
+        getContext().getSelf().tell(new SpawnCustomers(0));
+        return this;
+    }
+
+    /**
+     * Starts the part of the shop this cluster node has the role for. The cash register shards are entities of
+     * Cluster Sharding on the backend nodes, which also run coffee machines and register them with the receptionist.
+     * The front node routes to the cash register entities and finds the machines through the receptionist.
+     */
+    @SuppressWarnings("unchecked")
+    private Behavior<Command> startClusterNode() {
+        Cluster cluster = Cluster.get(getContext().getSystem());
+        boolean backend = cluster.selfMember().hasRole("backend");
+        boolean front = cluster.selfMember().hasRole("front");
+        getContext().getLog().info("Cluster node {} with roles {}", cluster.selfMember().address(), cluster.selfMember().getRoles());
+
+        if (backend && settings.journal != null) {
+            try {
+                BalanceJournal.checkShardCount(settings.journal, settings.cashRegisterShards);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read the journal directory " + settings.journal.directory, e);
+            }
+        }
+        // every node starts the region, nodes without the backend role get a proxy to it
+        ActorRef<ShardingEnvelope<CashRegister.Request>> region = ClusterSharding.get(getContext().getSystem()).init(
+                Entity.of(CashRegister.TYPE_KEY, entity -> metrics.instrument(ShopMetrics.Role.CASH_REGISTER,
+                                CashRegister.create(settings.reservationTimeout, settings.journal, Integer.parseInt(entity.getEntityId()),
+                                        settings.queryEnabled)))
+                        .withRole("backend")
+                        .withEntityProps(props(ShopMetrics.Role.CASH_REGISTER)));
 
-        // cash register which determines if enough balance is given
-        cashRegister = getContext().spawn(CashRegister.create(), "CashRegister");
+        if (backend) {
+            spawnMachines();
+            for (ActorRef<CoffeeMachine.Request> machine : machines) {
+                getContext().getSystem().receptionist().tell(Receptionist.register(CoffeeMachine.SERVICE_KEY, machine));
+            }
+        } else {
+            machines = new ActorRef[0];
+        }
+        if (!front) {
+            getContext().getLog().info("Backend ready: {} coffee machines in {} ms", machines.length,
+                    (System.nanoTime() - startNanos) / 1_000_000);
+            return this;
+        }
 
-        // 3 coffee machines with 10 units of coffee
-        machine1 = getContext().spawn(CoffeeMachine.create(10), "CoffeeMachine1");
-        machine2 = getContext().spawn(CoffeeMachine.create(10), "CoffeeMachine2");
-        machine3 = getContext().spawn(CoffeeMachine.create(10), "CoffeeMachine3");
+        cashRegister = getContext().spawn(
+                metrics.instrument(ShopMetrics.Role.CASH_REGISTER_ROUTER, CashRegisterRouter.create(settings.cashRegisterShards, region)),
+                "CashRegister", props(ShopMetrics.Role.CASH_REGISTER_ROUTER));
+        // the load balancer finds the machines of this node through the receptionist as well
+        machines = new ActorRef[0];
+        spawnLoadBalancer(CoffeeMachine.SERVICE_KEY);
+        startQueryServer();
+        getContext().getSelf().tell(new SpawnCustomers(0));
+        return this;
+    }
+
+    /**
+     * Spawns the coffee machines, all starting with the same supply, and the replenisher which refills them.
+     */
+    @SuppressWarnings("unchecked")
+    private void spawnMachines() {
+        machines = new ActorRef[settings.machines];
+        for (int i = 0; i < machines.length; i++) {
+            machines[i] = getContext().spawn(
+                    metrics.instrument(ShopMetrics.Role.COFFEE_MACHINE, CoffeeMachine.create(settings.initialSupply,
+                            settings.supplyReportInterval, settings.brewDuration, settings.brewBatchSize)),
+                    "CoffeeMachine" + (i + 1), props(ShopMetrics.Role.COFFEE_MACHINE));
+        }
+
+        // replenisher which refills the machines when they run low
+        if (settings.replenishment) {
+            getContext().spawn(Replenisher.create(machines, settings.refillLowWaterMark, settings.refillCapacity,
+                    settings.refillLatency, settings.parallelRefills), "Replenisher");
+        }
+    }
 
-        // load balancer for coffee machines
-        loadBalancer = getContext().spawn(LoadBalancer.create(cashRegister, new ActorRef[]{machine1, machine2, machine3}), "LoadBalancer");
+    /**
+     * Spawns the load balancer for the machines spawned so far.
+     *
+     * @param machineKey the key of the machines registered with the receptionist, null for none
+     */
+    private void spawnLoadBalancer(ServiceKey<CoffeeMachine.Request> machineKey) {
+        loadBalancer = getContext().spawn(
+                metrics.instrument(ShopMetrics.Role.LOAD_BALANCER, LoadBalancer.create(cashRegister, machines,
+                        MachineSelector.byName(settings.machineSelector, new Random(random.nextLong())),
+                        settings.creditBatchSize, settings.creditBatchWindow, settings.forwardToMachine,
+                        settings.admission(ShopClock.get(getContext().getSystem())), machineKey)),
+                "LoadBalancer", props(ShopMetrics.Role.LOAD_BALANCER));
+    }
 
-        // 4 customers to get money from
-        customer1 = getContext().spawn(Customer.create(cashRegister, loadBalancer), "Anna");
-        Thread.sleep(500);
-        customer2 = getContext().spawn(Customer.create(cashRegister, loadBalancer), "HomerSimpson");
-        Thread.sleep(500);
-        customer3 = getContext().spawn(Customer.create(cashRegister, loadBalancer), "WalterWhite");
-        Thread.sleep(500);
-        customer4 = getContext().spawn(Customer.create(cashRegister, loadBalancer), "Harry");
+    /**
+     * Starts the query API for the cash register and the load balancer of this node, if it is enabled. It is closed
+     * when the actor system terminates; the shop runs on without it if its address cannot be bound.
+     */
+    private void startQueryServer() {
+        if (!settings.queryEnabled) {
+            return;
+        }
+        try {
+            QueryServer query = QueryServer.start(getContext().getSystem(), settings, cashRegister, loadBalancer);
+            getContext().getSystem().getWhenTerminated().thenRun(query::close);
+        } catch (IOException e) {
+            getContext().getLog().warn("Could not start the query API on {}:{}", settings.queryHost, settings.queryPort, e);
+        }
+    }
 
+    private Behavior<Command> onSpawnCustomers(SpawnCustomers command) {
+        int perActor = customersPerActor();
+        // a batch is rounded up to whole populations
+        int batch = (settings.spawnBatchSize + perActor - 1) / perActor * perActor;
+        int to = (int) Math.min(settings.customers, (long) command.from + batch);
+        for (int i = command.from; i < to; i += perActor) {
+            ActorRef<Customer.Response> ref = perActor == 1 ? spawnCustomer(i + 1)
+                    : spawnPopulation(i + 1, Math.min(perActor, settings.customers - i));
+            if (customers != null) {
+                customers[i / perActor] = ref;
+            }
+        }
+        if (to < settings.customers) {
+            if (settings.spawnBatchInterval.isZero()) {
+                getContext().getSelf().tell(new SpawnCustomers(to));
+            } else {
+                timers.startSingleTimer(new SpawnCustomers(to), settings.spawnBatchInterval);
+            }
+        } else {
+            getContext().getLog().info("Topology ready: {} coffee machines, {} cash register shards and {} customers in {} ms",
+                    settings.machines, settings.cashRegisterShards, settings.customers,
+                    (System.nanoTime() - startNanos) / 1_000_000);
+            if (customers != null) {
+                // the open-loop load starts once every customer is there
+                getContext().spawn(ArrivalGenerator.create(customers, perActor, settings.customers, settings.interArrival(),
+                        random.split()), "Arrivals");
+                customers = null;
+            }
+        }
         return this;
     }
+
+    private ActorRef<Customer.Response> spawnCustomer(int id) {
+        Behavior<Customer.Response> customer = settings.openLoop()
+                ? Customer.arriving(id, cashRegister, loadBalancer, settings.maxWaitingArrivals, random.split())
+                : Customer.create(id, cashRegister, loadBalancer, settings.customerThinkTime, random.split());
+        return getContext().spawn(metrics.instrument(ShopMetrics.Role.CUSTOMER, customer),
+                "Customer" + id, props(ShopMetrics.Role.CUSTOMER));
+    }
+
+    private ActorRef<Customer.Response> spawnPopulation(int firstId, int size) {
+        Behavior<Customer.Response> population = settings.openLoop()
+                ? CustomerPopulation.arriving(firstId, size, cashRegister, loadBalancer,
+                        settings.maxWaitingArrivals, random.split())
+                : CustomerPopulation.create(firstId, size, cashRegister, loadBalancer, settings.customerThinkTime, random.split());
+        return getContext().spawn(metrics.instrument(ShopMetrics.Role.CUSTOMER, population),
+                "CustomerPopulation" + ((firstId - 1) / settings.customerPopulationSize + 1), props(ShopMetrics.Role.CUSTOMER));
+    }
+
+    /**
+     * @return the customers each customer actor stands for, 1 without customer populations
+     */
+    private int customersPerActor() {
+        return Math.max(1, settings.customerPopulationSize);
+    }
+
+    /**
+     * @return the mailbox and dispatcher of the role
+     */
+    private Props props(ShopMetrics.Role role) {
+        return dispatchers.props(role, metrics.props(role));
+    }
 }
@@ -0,0 +1,517 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.ExtendedActorSystem;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorRefResolver;
+import akka.actor.typed.javadsl.Adapter;
+import akka.serialization.SerializerWithStringManifest;
+
+import java.io.NotSerializableException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Compact binary serializer of the shop protocol, used for the messages between the nodes of a cluster.
+ * The manifest is one letter per message type. Integers are varints (zig-zag encoded where they can be
+ * negative), so small counts and ids take one or two bytes.
+ * <p>
+ * Actor references take most of the bytes, so a reference is split into the path of its parent, its name and
+ * its uid: the parent path (which holds the address of the node) is written once per message and referred to
+ * by index after that, and a name like {@code Customer17} is written as an interned stem plus a number.
+ * Customers are told apart by their ids, which are written as varints, so messages to a customer and the
+ * batches of balance checks carry no reference of a customer at all.
+ * <p>
+ * Bound to the protocol interfaces in {@code application.conf}; the private self-messages of the actors
+ * never leave their node and are not supported.
+ */
+public final class CoffeeSerializer extends SerializerWithStringManifest {
+
+    private static final String RECHARGE = "R";
+    private static final String STATE = "S";
+    private static final String COMMIT_CREDIT = "C";
+    private static final String RELEASE_CREDIT = "L";
+    private static final String STATE_BATCH = "B";
+    private static final String CREDIT_SUCCESS = "s";
+    private static final String CREDIT_FAIL = "f";
+    private static final String CREDIT_BATCH = "b";
+    private static final String GET_SUPPLY = "p";
+    private static final String GET_COFFEE = "g";
+    private static final String GIVE_SUPPLY = "v";
+    private static final String MACHINE_GET_COFFEE = "G";
+    private static final String START_REFILL = "r";
+    private static final String REFILL = "F";
+    private static final String RECHARGE_SUCCESS = "1";
+    private static final String BALANCE_FAIL = "2";
+    private static final String GET_COFFEE_MACHINE = "3";
+    private static final String GET_SUCCESS = "4";
+    private static final String GET_FAIL = "5";
+    private static final String BUSY = "6";
+    private static final String GET_TOTALS = "T";
+    private static final String TOTALS = "t";
+    private static final String GET_STATUS = "Q";
+
+    private final ActorRefResolver resolver;
+
+    public CoffeeSerializer(ExtendedActorSystem system) {
+        this.resolver = ActorRefResolver.get(Adapter.toTyped(system));
+    }
+
+    @Override
+    public int identifier() {
+        return 2_010_346;
+    }
+
+    @Override
+    public String manifest(Object message) {
+        if (message instanceof CashRegister.Recharge) {
+            return RECHARGE;
+        } else if (message instanceof CashRegister.State) {
+            return STATE;
+        } else if (message instanceof CashRegister.CommitCredit) {
+            return COMMIT_CREDIT;
+        } else if (message instanceof CashRegister.ReleaseCredit) {
+            return RELEASE_CREDIT;
+        } else if (message instanceof CashRegister.StateBatch) {
+            return STATE_BATCH;
+        } else if (message instanceof LoadBalancer.CreditSuccess) {
+            return CREDIT_SUCCESS;
+        } else if (message instanceof LoadBalancer.CreditFail) {
+            return CREDIT_FAIL;
+        } else if (message instanceof LoadBalancer.CreditBatch) {
+            return CREDIT_BATCH;
+        } else if (message instanceof LoadBalancer.GetSupply) {
+            return GET_SUPPLY;
+        } else if (message instanceof LoadBalancer.GetCoffee) {
+            return GET_COFFEE;
+        } else if (message instanceof CoffeeMachine.GiveSupply) {
+            return GIVE_SUPPLY;
+        } else if (message instanceof CoffeeMachine.GetCoffee) {
+            return MACHINE_GET_COFFEE;
+        } else if (message == CoffeeMachine.StartRefill.INSTANCE) {
+            return START_REFILL;
+        } else if (message instanceof CoffeeMachine.Refill) {
+            return REFILL;
+        } else if (message instanceof Customer.RechargeSuccess) {
+            return RECHARGE_SUCCESS;
+        } else if (message instanceof Customer.BalanceFail) {
+            return BALANCE_FAIL;
+        } else if (message instanceof Customer.GetCoffeeMachine) {
+            return GET_COFFEE_MACHINE;
+        } else if (message instanceof Customer.GetSuccess) {
+            return GET_SUCCESS;
+        } else if (message instanceof Customer.GetFail) {
+            return GET_FAIL;
+        } else if (message instanceof Customer.Busy) {
+            return BUSY;
+        } else if (message instanceof CashRegister.GetTotals) {
+            return GET_TOTALS;
+        } else if (message instanceof CashRegister.Totals) {
+            return TOTALS;
+        } else if (message instanceof CoffeeMachine.GetStatus) {
+            return GET_STATUS;
+        }
+        throw new IllegalArgumentException("Cannot serialize " + message.getClass().getName());
+    }
+
+    @Override
+    public byte[] toBinary(Object message) {
+        Writer out = new Writer();
+        write(message, out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException {
+        try {
+            return read(manifest, new Reader(bytes));
+        } catch (RuntimeException e) {
+            NotSerializableException cause = new NotSerializableException("Cannot read " + manifest + ": " + e);
+            cause.initCause(e);
+            throw cause;
+        }
+    }
+
+    private void write(Object message, Writer out) {
+        if (message instanceof CashRegister.Recharge) {
+            CashRegister.Recharge recharge = (CashRegister.Recharge) message;
+            writeRef(recharge.sender, out);
+            out.writeVarLong(recharge.customerId);
+        } else if (message instanceof CashRegister.State) {
+            CashRegister.State state = (CashRegister.State) message;
+            writeRef(state.sender, out);
+            writeRef(state.ofWhom, out);
+            out.writeVarLong(state.customerId);
+        } else if (message instanceof CashRegister.CommitCredit) {
+            CashRegister.CommitCredit commit = (CashRegister.CommitCredit) message;
+            out.writeVarLong(commit.customerId);
+            out.writeSignedVarLong(commit.reservation);
+        } else if (message instanceof CashRegister.ReleaseCredit) {
+            CashRegister.ReleaseCredit release = (CashRegister.ReleaseCredit) message;
+            out.writeVarLong(release.customerId);
+            out.writeSignedVarLong(release.reservation);
+        } else if (message instanceof CashRegister.StateBatch) {
+            CashRegister.StateBatch batch = (CashRegister.StateBatch) message;
+            writeRef(batch.sender, out);
+            out.writeVarLong(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                out.writeVarLong(batch.customerId(i));
+            }
+        } else if (message instanceof LoadBalancer.CreditSuccess) {
+            LoadBalancer.CreditSuccess success = (LoadBalancer.CreditSuccess) message;
+            writeRef(success.ofWhom, out);
+            out.writeVarLong(success.customerId);
+            out.writeSignedVarLong(success.reservation);
+        } else if (message instanceof LoadBalancer.CreditFail) {
+            LoadBalancer.CreditFail fail = (LoadBalancer.CreditFail) message;
+            writeRef(fail.ofWhom, out);
+            out.writeVarLong(fail.customerId);
+        } else if (message instanceof LoadBalancer.CreditBatch) {
+            LoadBalancer.CreditBatch batch = (LoadBalancer.CreditBatch) message;
+            out.writeVarLong(batch.size());
+            BitSet granted = new BitSet(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                out.writeVarLong(batch.customerId(i));
+                if (batch.granted(i)) {
+                    granted.set(i);
+                }
+            }
+            byte[] bits = granted.toByteArray();
+            out.writeVarLong(bits.length);
+            out.writeBytes(bits);
+            // reservation ids are handed out in order, so only the distance to the previous granted one is written
+            long previous = 0;
+            for (int i = batch.nextGranted(0); i >= 0; i = batch.nextGranted(i + 1)) {
+                out.writeSignedVarLong(batch.reservation(i) - previous);
+                previous = batch.reservation(i);
+            }
+        } else if (message instanceof LoadBalancer.GetSupply) {
+            LoadBalancer.GetSupply supply = (LoadBalancer.GetSupply) message;
+            writeRef(supply.sender, out);
+            out.writeSignedVarLong(supply.remainingCoffee);
+            out.writeVarLong(supply.handled);
+            out.writeDouble(supply.brewRate);
+            out.writeByte(supply.refilling ? 1 : 0);
+            out.writeVarLong(supply.queued);
+        } else if (message instanceof LoadBalancer.GetCoffee) {
+            LoadBalancer.GetCoffee get = (LoadBalancer.GetCoffee) message;
+            writeRef(get.sender, out);
+            out.writeVarLong(get.customerId);
+        } else if (message instanceof CoffeeMachine.GiveSupply) {
+            writeRef(((CoffeeMachine.GiveSupply) message).sender, out);
+        } else if (message instanceof CoffeeMachine.GetCoffee) {
+            CoffeeMachine.GetCoffee get = (CoffeeMachine.GetCoffee) message;
+            writeRef(get.sender, out);
+            out.writeVarLong(get.customerId);
+            out.writeByte(get.cashRegister != null ? 1 : 0);
+            if (get.cashRegister != null) {
+                writeRef(get.cashRegister, out);
+            }
+            out.writeSignedVarLong(get.reservation);
+        } else if (message == CoffeeMachine.StartRefill.INSTANCE) {
+            // no payload
+        } else if (message instanceof CoffeeMachine.Refill) {
+            out.writeSignedVarLong(((CoffeeMachine.Refill) message).level);
+        } else if (message instanceof Customer.RechargeSuccess) {
+            Customer.RechargeSuccess success = (Customer.RechargeSuccess) message;
+            out.writeVarLong(success.customerId);
+            out.writeSignedVarLong(success.balance);
+        } else if (message instanceof Customer.BalanceFail) {
+            out.writeVarLong(((Customer.BalanceFail) message).customerId);
+        } else if (message instanceof Customer.GetCoffeeMachine) {
+            Customer.GetCoffeeMachine machine = (Customer.GetCoffeeMachine) message;
+            out.writeVarLong(machine.customerId);
+            writeRef(machine.coffeeMachine, out);
+            out.writeSignedVarLong(machine.reservation);
+        } else if (message instanceof Customer.GetSuccess) {
+            out.writeVarLong(((Customer.GetSuccess) message).customerId);
+        } else if (message instanceof Customer.GetFail) {
+            out.writeVarLong(((Customer.GetFail) message).customerId);
+        } else if (message instanceof Customer.Busy) {
+            Customer.Busy busy = (Customer.Busy) message;
+            out.writeVarLong(busy.customerId);
+            out.writeVarLong(busy.retryAfter.toNanos());
+        } else if (message instanceof CashRegister.GetTotals) {
+            CashRegister.GetTotals get = (CashRegister.GetTotals) message;
+            writeRef(get.replyTo, out);
+            out.writeVarLong(get.top);
+        } else if (message instanceof CashRegister.Totals) {
+            CashRegister.Totals totals = (CashRegister.Totals) message;
+            out.writeSignedVarLong(totals.totalBalance);
+            out.writeVarLong(totals.customers);
+            out.writeVarLong(totals.heldCredits);
+            out.writeVarLong(totals.shards);
+            out.writeVarLong(totals.topSize());
+            for (int i = 0; i < totals.topSize(); i++) {
+                out.writeVarLong(totals.topCustomer(i));
+            }
+            for (int i = 0; i < totals.topSize(); i++) {
+                out.writeSignedVarLong(totals.topBalance(i));
+            }
+        } else if (message instanceof CoffeeMachine.GetStatus) {
+            writeRef(((CoffeeMachine.GetStatus) message).replyTo, out);
+        } else {
+            throw new IllegalArgumentException("Cannot serialize " + message.getClass().getName());
+        }
+    }
+
+    private Object read(String manifest, Reader in) {
+        switch (manifest) {
+            case RECHARGE:
+                return new CashRegister.Recharge(readRef(in), readId(in));
+            case STATE:
+                return new CashRegister.State(readRef(in), readRef(in), readId(in));
+            case COMMIT_CREDIT:
+                return new CashRegister.CommitCredit(readId(in), in.readSignedVarLong());
+            case RELEASE_CREDIT:
+                return new CashRegister.ReleaseCredit(readId(in), in.readSignedVarLong());
+            case STATE_BATCH: {
+                ActorRef<LoadBalancer.Mixed> sender = readRef(in);
+                return new CashRegister.StateBatch(sender, readIds(in, (int) in.readVarLong()));
+            }
+            case CREDIT_SUCCESS:
+                return new LoadBalancer.CreditSuccess(readRef(in), readId(in), in.readSignedVarLong());
+            case CREDIT_FAIL:
+                return new LoadBalancer.CreditFail(readRef(in), readId(in));
+            case CREDIT_BATCH: {
+                int[] customerIds = readIds(in, (int) in.readVarLong());
+                BitSet granted = BitSet.valueOf(in.readBytes((int) in.readVarLong()));
+                long[] reservations = new long[customerIds.length];
+                long previous = 0;
+                for (int i = granted.nextSetBit(0); i >= 0; i = granted.nextSetBit(i + 1)) {
+                    previous += in.readSignedVarLong();
+                    reservations[i] = previous;
+                }
+                return new LoadBalancer.CreditBatch(customerIds, granted, reservations);
+            }
+            case GET_SUPPLY:
+                return new LoadBalancer.GetSupply(readRef(in), (int) in.readSignedVarLong(), in.readVarLong(), in.readDouble(),
+                        in.readByte() != 0, (int) in.readVarLong());
+            case GET_COFFEE:
+                return new LoadBalancer.GetCoffee(readRef(in), readId(in));
+            case GIVE_SUPPLY:
+                return new CoffeeMachine.GiveSupply(readRef(in));
+            case MACHINE_GET_COFFEE: {
+                ActorRef<Customer.Response> sender = readRef(in);
+                int customerId = readId(in);
+                ActorRef<CashRegister.Request> cashRegister = in.readByte() != 0 ? readRef(in) : null;
+                return new CoffeeMachine.GetCoffee(sender, customerId, cashRegister, in.readSignedVarLong());
+            }
+            case START_REFILL:
+                return CoffeeMachine.StartRefill.INSTANCE;
+            case REFILL:
+                return new CoffeeMachine.Refill((int) in.readSignedVarLong());
+            case RECHARGE_SUCCESS:
+                return new Customer.RechargeSuccess(readId(in), (int) in.readSignedVarLong());
+            case BALANCE_FAIL:
+                return Customer.BalanceFail.of(readId(in));
+            case GET_COFFEE_MACHINE:
+                return new Customer.GetCoffeeMachine(readId(in), readRef(in), in.readSignedVarLong());
+            case GET_SUCCESS:
+                return Customer.GetSuccess.of(readId(in));
+            case GET_FAIL:
+                return Customer.GetFail.of(readId(in));
+            case BUSY:
+                return new Customer.Busy(readId(in), Duration.ofNanos(in.readVarLong()));
+            case GET_TOTALS:
+                return new CashRegister.GetTotals(readRef(in), (int) in.readVarLong());
+            case TOTALS: {
+                long totalBalance = in.readSignedVarLong();
+                int customers = (int) in.readVarLong();
+                int heldCredits = (int) in.readVarLong();
+                int shards = (int) in.readVarLong();
+                int[] topCustomers = readIds(in, (int) in.readVarLong());
+                int[] topBalances = new int[topCustomers.length];
+                for (int i = 0; i < topBalances.length; i++) {
+                    topBalances[i] = (int) in.readSignedVarLong();
+                }
+                return new CashRegister.Totals(totalBalance, customers, heldCredits, topCustomers, topBalances, shards);
+            }
+            case GET_STATUS:
+                return new CoffeeMachine.GetStatus(readRef(in));
+            default:
+                throw new IllegalArgumentException("Unknown manifest " + manifest);
+        }
+    }
+
+    /**
+     * Writes the parent path and the name stem as an index into the strings of this message (0 for a new string,
+     * which follows), then the number at the end of the name and the uid.
+     */
+    private void writeRef(ActorRef<?> ref, Writer out) {
+        String format = resolver.toSerializationFormat(ref);
+        int hash = format.lastIndexOf('#');
+        int end = hash < 0 ? format.length() : hash;
+        int slash = format.lastIndexOf('/', end - 1);
+        out.writeInterned(format.substring(0, slash));
+        // a trailing number without leading zeros, so it can be written back the same way
+        int digits = end;
+        while (digits > slash + 1 && Character.isDigit(format.charAt(digits - 1)) && end - digits < 18) {
+            digits--;
+        }
+        while (digits < end - 1 && format.charAt(digits) == '0') {
+            digits++;
+        }
+        out.writeInterned(format.substring(slash + 1, digits));
+        out.writeVarLong(digits == end ? 0 : Long.parseLong(format, digits, end, 10) + 1);
+        out.writeVarLong(hash < 0 ? 0 : (((long) Integer.parseInt(format, hash + 1, format.length(), 10)) & 0xFFFFFFFFL) + 1);
+    }
+
+    private static int readId(Reader in) {
+        return (int) in.readVarLong();
+    }
+
+    private static int[] readIds(Reader in, int size) {
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = readId(in);
+        }
+        return ids;
+    }
+
+    private <T> ActorRef<T> readRef(Reader in) {
+        StringBuilder format = new StringBuilder(96);
+        format.append(in.readInterned()).append('/').append(in.readInterned());
+        long number = in.readVarLong();
+        if (number > 0) {
+            format.append(number - 1);
+        }
+        long uid = in.readVarLong();
+        if (uid > 0) {
+            format.append('#').append((int) (uid - 1));
+        }
+        return resolver.resolveActorRef(format.toString());
+    }
+
+    /**
+     * Growing byte array with varints and the strings of one message.
+     */
+    static final class Writer {
+        private byte[] bytes = new byte[64];
+        private int size;
+        private final List<String> strings = new ArrayList<>();
+
+        void writeByte(int value) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeBytes(byte[] value) {
+            if (size + value.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size * 2, size + value.length));
+            }
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeSignedVarLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeDouble(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                writeByte((int) (bits >>> shift));
+            }
+        }
+
+        void writeInterned(String value) {
+            int index = strings.indexOf(value);
+            if (index >= 0) {
+                writeVarLong(index + 1);
+                return;
+            }
+            strings.add(value);
+            writeVarLong(0);
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length);
+            writeBytes(utf8);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    static final class Reader {
+        private final byte[] bytes;
+        private int position;
+        private final List<String> strings = new ArrayList<>();
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            if (position == bytes.length) {
+                throw new IllegalArgumentException("Message ends after " + position + " bytes");
+            }
+            return bytes[position++];
+        }
+
+        byte[] readBytes(int length) {
+            if (length < 0 || position + length > bytes.length) {
+                throw new IllegalArgumentException("Message ends before " + length + " bytes at " + position);
+            }
+            byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return value;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint longer than 64 bits at " + position);
+        }
+
+        long readSignedVarLong() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        double readDouble() {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (readByte() & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        String readInterned() {
+            int index = (int) readVarLong();
+            if (index > 0) {
+                return strings.get(index - 1);
+            }
+            int length = (int) readVarLong();
+            if (length < 0 || position + length > bytes.length) {
+                throw new IllegalArgumentException("Message ends before a string of " + length + " bytes at " + position);
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            strings.add(value);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+
+/**
+ * Settings of the coffee shop, read from the {@code coffee} section of the configuration.
+ */
+public final class CoffeeSettings {
+    // cash register shards if none are configured but the number must not depend on the cores of one host:
+    // in a cluster, and with a journal, which is only readable with the shard count it was written with
+    private static final int FIXED_SHARDS = 16;
+
+    public final int machines;
+    public final int initialSupply;
+    public final Duration supplyReportInterval;
+    public final Duration brewDuration;
+    public final int brewBatchSize;
+    public final String machineSelector;
+    public final boolean replenishment;
+    public final int refillLowWaterMark;
+    public final int refillCapacity;
+    public final Duration refillLatency;
+    public final int parallelRefills;
+    public final int cashRegisterShards;
+    public final boolean cluster;
+    public final Duration reservationTimeout;
+    public final int creditBatchSize;
+    public final Duration creditBatchWindow;
+    public final boolean forwardToMachine;
+    public final int admissionMaxInFlight;
+    public final double admissionRate;
+    public final int admissionBurst;
+    public final Duration admissionRetryAfter;
+    /** null if the balances are kept in memory only */
+    public final BalanceJournal.Settings journal;
+    public final int customers;
+    public final ThinkTime customerThinkTime;
+    /** customers per {@link CustomerPopulation}, 0 for an actor per customer */
+    public final int customerPopulationSize;
+    /** closed: every customer thinks between actions; poisson or fixed: customers act on arrivals at arrivalRate */
+    public final String arrivals;
+    public final double arrivalRate;
+    /** arrivals which wait behind the one a customer is acting on, 0 for no limit */
+    public final int maxWaitingArrivals;
+    /** 0 for a new seed in every run */
+    public final long randomSeed;
+    public final int spawnBatchSize;
+    public final Duration spawnBatchInterval;
+    public final boolean queryEnabled;
+    public final String queryHost;
+    public final int queryPort;
+    public final Duration queryTimeout;
+    /** the most customers with the highest balances a query may ask for */
+    public final int queryMaxTop;
+
+    private CoffeeSettings(Config config) {
+        machines = config.getInt("machines");
+        initialSupply = config.getInt("initial-supply");
+        supplyReportInterval = config.getDuration("supply-report-interval");
+        brewDuration = config.getDuration("brew.duration");
+        brewBatchSize = Math.max(1, config.getInt("brew.batch-size"));
+        machineSelector = config.getString("machine-selector");
+        replenishment = config.getBoolean("replenishment.enabled");
+        refillLowWaterMark = config.getInt("replenishment.low-water-mark");
+        refillCapacity = config.getInt("replenishment.capacity");
+        refillLatency = config.getDuration("replenishment.latency");
+        parallelRefills = Math.max(1, config.getInt("replenishment.parallel-refills"));
+        cluster = config.getBoolean("cluster.enabled");
+        journal = BalanceJournal.Settings.fromConfig(config.getConfig("journal"));
+        if (cluster && journal != null && !config.getBoolean("journal.shared")) {
+            throw new IllegalArgumentException("In cluster mode a cash register shard moves between nodes, so a journal of"
+                    + " each node's own (coffee.journal.directory = " + journal.directory + ") would lose balances. Set"
+                    + " coffee.journal.shared = on with a directory every node shares, or coffee.journal.enabled = off.");
+        }
+        int shards = config.getInt("cash-register-shards");
+        cashRegisterShards = shards > 0 ? shards
+                : cluster || journal != null ? FIXED_SHARDS : Runtime.getRuntime().availableProcessors();
+        reservationTimeout = config.getDuration("reservation-timeout");
+        creditBatchSize = Math.max(1, config.getInt("credit-batch.max-size"));
+        creditBatchWindow = config.getDuration("credit-batch.window");
+        forwardToMachine = config.getBoolean("forward-to-machine");
+        admissionMaxInFlight = config.getInt("admission.max-in-flight");
+        admissionRate = config.getDouble("admission.rate");
+        admissionBurst = config.getInt("admission.burst");
+        admissionRetryAfter = config.getDuration("admission.retry-after");
+        customers = config.getInt("customers");
+        customerThinkTime = thinkTime(config.getConfig("customer-think-time"));
+        customerPopulationSize = config.getInt("customer-population-size");
+        if (customerPopulationSize < 0) {
+            throw new IllegalArgumentException("customer-population-size cannot be negative, was " + customerPopulationSize);
+        }
+        arrivals = config.getString("arrivals.mode");
+        arrivalRate = config.getDouble("arrivals.rate");
+        maxWaitingArrivals = config.getInt("arrivals.max-waiting");
+        if (!arrivals.equals("closed") && !arrivals.equals("poisson") && !arrivals.equals("fixed")) {
+            throw new IllegalArgumentException("Unknown arrival mode: " + arrivals);
+        }
+        if (openLoop() && arrivalRate <= 0) {
+            throw new IllegalArgumentException("Open-loop arrivals need a positive rate, not " + arrivalRate);
+        }
+        if (maxWaitingArrivals < 0) {
+            throw new IllegalArgumentException("arrivals.max-waiting cannot be negative, was " + maxWaitingArrivals);
+        }
+        if (openLoop() && customers == 0) {
+            throw new IllegalArgumentException("Open-loop arrivals need at least one customer");
+        }
+        randomSeed = config.getLong("random-seed");
+        spawnBatchSize = Math.max(1, config.getInt("spawn.batch-size"));
+        spawnBatchInterval = config.getDuration("spawn.batch-interval");
+        queryEnabled = config.getBoolean("query.enabled");
+        queryHost = config.getString("query.host");
+        queryPort = config.getInt("query.port");
+        queryTimeout = config.getDuration("query.timeout");
+        queryMaxTop = Math.max(0, config.getInt("query.max-top"));
+    }
+
+    /**
+     * @param config the root configuration of the actor system
+     */
+    public static CoffeeSettings fromConfig(Config config) {
+        return new CoffeeSettings(config.getConfig("coffee"));
+    }
+
+    /**
+     * @return a new admission control for one load balancer
+     */
+    public Admission admission(ShopClock clock) {
+        return new Admission(admissionMaxInFlight, admissionRate, admissionBurst, admissionRetryAfter, clock::nanoTime);
+    }
+
+    /**
+     * @return true if customers act on the arrivals of an {@link ArrivalGenerator} instead of thinking
+     */
+    public boolean openLoop() {
+        return !arrivals.equals("closed");
+    }
+
+    /**
+     * @return the time between two arrivals of the open-loop load
+     */
+    public ThinkTime interArrival() {
+        Duration mean = Duration.ofNanos((long) (1_000_000_000L / arrivalRate));
+        return arrivals.equals("poisson") ? ThinkTime.exponential(mean) : ThinkTime.fixed(mean);
+    }
+
+    private static ThinkTime thinkTime(Config config) {
+        String distribution = config.getString("distribution");
+        switch (distribution) {
+            case "fixed":
+                return ThinkTime.fixed(config.getDuration("mean"));
+            case "uniform":
+                return ThinkTime.uniform(config.getDuration("min"), config.getDuration("max"));
+            case "exponential":
+                return ThinkTime.exponential(config.getDuration("mean"));
+            default:
+                throw new IllegalArgumentException("Unknown think time distribution: " + distribution);
+        }
+    }
+}
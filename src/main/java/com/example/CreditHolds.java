@@ -0,0 +1,154 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import java.util.function.IntConsumer;
+
+/**
+ * Credits held for customers between the balance check and the coffee, one table per cash register shard.
+ * <p>
+ * Reservation ids are handed out in order and every hold lives for the same number of ticks, so holds also
+ * expire in id order. The table is therefore a ring indexed by id: settling a hold only clears its slot,
+ * and each tick walks from the oldest id forward until it reaches a hold which is not due yet. This gives
+ * the same O(1) cost per hold as a timer wheel and needs one timer per shard instead of one per reservation.
+ * A hold costs the customer id, one long and one int, 16 bytes, plus the ring slack.
+ */
+final class CreditHolds {
+
+    // customer id of every hold, 0 once it is settled or expired
+    private int[] customers;
+    private long[] ids;
+    private int[] deadlines;
+    private int mask;
+    // every id in [oldest, next) is either held or already settled
+    private long oldest;
+    private long next;
+    private int outstanding;
+    // held credits per customer
+    private final BalanceStore held = new BalanceStore();
+    private final int timeoutTicks;
+    private int tick;
+
+    CreditHolds(int timeoutTicks) {
+        this(timeoutTicks, 1024);
+    }
+
+    CreditHolds(int timeoutTicks, int expectedHolds) {
+        this.timeoutTicks = Math.max(1, timeoutTicks);
+        allocate(Integer.highestOneBit(Math.max(16, expectedHolds) - 1) << 1);
+    }
+
+    /**
+     * @return the number of holds which are neither settled nor expired
+     */
+    int outstanding() {
+        return outstanding;
+    }
+
+    /**
+     * @return the number of credits held for the customer
+     */
+    int held(int customer) {
+        return held.get(customer);
+    }
+
+    /**
+     * Holds one credit for the customer until it is settled or the timeout is over.
+     *
+     * @return the reservation id
+     */
+    long hold(int customer) {
+        if (next - oldest == customers.length) {
+            skipSettled();
+            if (next - oldest == customers.length) {
+                grow();
+            }
+        }
+        long id = next++;
+        int slot = (int) id & mask;
+        customers[slot] = customer;
+        ids[slot] = id;
+        deadlines[slot] = tick + timeoutTicks;
+        held.add(customer, 1);
+        outstanding++;
+        return id;
+    }
+
+    /**
+     * Ends the hold, whether its credit is taken or given back.
+     *
+     * @return the customer of the hold, or 0 if the hold is unknown, already settled or expired
+     */
+    int settle(long id) {
+        int slot = (int) id & mask;
+        int customer = customers[slot];
+        if (customer == 0 || ids[slot] != id || id < oldest) {
+            return 0;
+        }
+        customers[slot] = 0;
+        held.add(customer, -1);
+        outstanding--;
+        return customer;
+    }
+
+    /**
+     * Advances the clock by one tick and ends every hold which is due.
+     *
+     * @param expired gets the customer of every expired hold
+     * @return the number of expired holds
+     */
+    int tick(IntConsumer expired) {
+        tick++;
+        int count = 0;
+        while (oldest < next) {
+            int slot = (int) oldest & mask;
+            int customer = customers[slot];
+            if (customer != 0) {
+                if (deadlines[slot] - tick > 0) {
+                    break;
+                }
+                customers[slot] = 0;
+                held.add(customer, -1);
+                outstanding--;
+                count++;
+                expired.accept(customer);
+            }
+            oldest++;
+        }
+        return count;
+    }
+
+    private void skipSettled() {
+        while (oldest < next && customers[(int) oldest & mask] == 0) {
+            oldest++;
+        }
+    }
+
+    private void grow() {
+        int[] oldCustomers = customers;
+        long[] oldIds = ids;
+        int[] oldDeadlines = deadlines;
+        int oldMask = mask;
+        allocate(oldCustomers.length << 1);
+        for (long id = oldest; id < next; id++) {
+            int from = (int) id & oldMask;
+            int to = (int) id & mask;
+            customers[to] = oldCustomers[from];
+            ids[to] = oldIds[from];
+            deadlines[to] = oldDeadlines[from];
+        }
+    }
+
+    private void allocate(int capacity) {
+        customers = new int[capacity];
+        ids = new long[capacity];
+        deadlines = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "CreditHolds(" + outstanding + " outstanding, capacity " + customers.length + ")";
+    }
+}
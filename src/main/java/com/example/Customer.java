@@ -10,24 +10,60 @@ import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.function.IntFunction;
+
+/**
+ * A customer as an actor of its own, named {@code Customer<id>}. Every message to a customer carries the id of the
+ * customer it is for instead of a reference, so a {@link CustomerPopulation} can stand in for many customers with
+ * the same protocol.
+ */
 public class Customer extends AbstractBehavior<Customer.Response> {
+    // for the level check only, the lines themselves go through getContext().getLog() for the MDC
+    private static final Logger log = LoggerFactory.getLogger(Customer.class);
 
+    // positive and unique in the shop, the cash register keeps the balance under it
+    private final int id;
     private final ActorRef<LoadBalancer.Mixed> loadBalancer;
     private final ActorRef<CashRegister.Request> cashRegister;
+    private final TimerScheduler<Response> timers;
+    // null for a customer who only acts on arrivals of the open-loop load
+    private final ThinkTime thinkTime;
+    private final SplittableRandom random;
+    private final ShopMetrics metrics;
+    private final ShopClock clock;
+    // arrival times not yet done in open-loop load, the first one is the action in progress
+    private final Queue<Long> arrivals;
+    // arrivals which may wait behind the one in progress, 0 for no limit
+    private final int maxWaiting;
+    // when the customer last asked the load balancer for a coffee
+    private long coffeeRequestedAt;
+    // how often in a row the load balancer was busy
+    private int busyAttempts;
 
     public interface Response {
     }
 
+    // customers with an id below this get the same instance of a reply without payload every time
+    private static final int CACHED_REPLIES = 1 << 14;
+
     /**
      * Is triggered after balance is successfully recharged.
      */
     public static final class RechargeSuccess implements Response {
-        private final ActorRef<Customer.Response> ofWhom;
-        private final int balance;
+        public final int customerId;
+        public final int balance;
 
-        public RechargeSuccess(ActorRef<Customer.Response> ofWhom, int balance) {
-            this.ofWhom = ofWhom;
+        public RechargeSuccess(int customerId, int balance) {
+            this.customerId = customerId;
             this.balance = balance;
         }
     }
@@ -36,10 +72,16 @@ public class Customer extends AbstractBehavior<Customer.Response> {
      * Is triggered when load balancer sends a message that balance is not enough for a coffee.
      */
     public static final class BalanceFail implements Response {
-        private final ActorRef<Customer.Response> ofWhom;
+        private static final BalanceFail[] CACHE = new BalanceFail[CACHED_REPLIES];
+
+        public final int customerId;
+
+        private BalanceFail(int customerId) {
+            this.customerId = customerId;
+        }
 
-        public BalanceFail(ActorRef<Customer.Response> ofWhom) {
-            this.ofWhom = ofWhom;
+        public static BalanceFail of(int customerId) {
+            return cached(CACHE, customerId, BalanceFail::new);
         }
     }
 
@@ -47,12 +89,15 @@ public class Customer extends AbstractBehavior<Customer.Response> {
      * Is triggered after load balancer returns the machine with the most remaining coffee.
      */
     public static final class GetCoffeeMachine implements Response {
-        public ActorRef<LoadBalancer.Mixed> sender;
-        public ActorRef<CoffeeMachine.Request> coffeeMachine;
+        public final int customerId;
+        public final ActorRef<CoffeeMachine.Request> coffeeMachine;
+        // the credit held for the coffee, settled by the machine
+        public final long reservation;
 
-        public GetCoffeeMachine(ActorRef<LoadBalancer.Mixed> sender, ActorRef<CoffeeMachine.Request> coffeeMachine) {
-            this.sender = sender;
+        public GetCoffeeMachine(int customerId, ActorRef<CoffeeMachine.Request> coffeeMachine, long reservation) {
+            this.customerId = customerId;
             this.coffeeMachine = coffeeMachine;
+            this.reservation = reservation;
         }
     }
 
@@ -60,10 +105,16 @@ public class Customer extends AbstractBehavior<Customer.Response> {
      * Is triggered after the customer has received a coffee from the machine.
      */
     public static final class GetSuccess implements Response {
-        private final ActorRef<Customer.Response> ofWhom;
+        private static final GetSuccess[] CACHE = new GetSuccess[CACHED_REPLIES];
+
+        public final int customerId;
+
+        private GetSuccess(int customerId) {
+            this.customerId = customerId;
+        }
 
-        public GetSuccess(ActorRef<Customer.Response> ofWhom) {
-            this.ofWhom = ofWhom;
+        public static GetSuccess of(int customerId) {
+            return cached(CACHE, customerId, GetSuccess::new);
         }
     }
 
@@ -71,26 +122,159 @@ public class Customer extends AbstractBehavior<Customer.Response> {
      * Is triggered when the chosen coffee machine is empty.
      */
     public static final class GetFail implements Response {
-        private final ActorRef<Customer.Response> ofWhom;
+        private static final GetFail[] CACHE = new GetFail[CACHED_REPLIES];
+
+        public final int customerId;
+
+        private GetFail(int customerId) {
+            this.customerId = customerId;
+        }
+
+        public static GetFail of(int customerId) {
+            return cached(CACHE, customerId, GetFail::new);
+        }
+    }
+
+    /**
+     * Is triggered when the load balancer is too busy to take the coffee request.
+     */
+    public static final class Busy implements Response {
+        public final int customerId;
+        public final Duration retryAfter;
+
+        public Busy(int customerId, Duration retryAfter) {
+            this.customerId = customerId;
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    /**
+     * Is triggered by the {@link ArrivalGenerator}: the customer acts once, after the arrivals before it are done.
+     */
+    public static final class Arrive implements Response {
+        public final int customerId;
+        // ShopClock time of the arrival, the latency of the coffee is measured from it
+        public final long arrivedAt;
+
+        public Arrive(int customerId, long arrivedAt) {
+            this.customerId = customerId;
+            this.arrivedAt = arrivedAt;
+        }
+    }
+
+    /**
+     * Is triggered by the {@link ArrivalGenerator} for customers who share a {@link CustomerPopulation}: the arrivals
+     * of customers {@code firstCustomerId}, {@code firstCustomerId + 1} and so on, one {@link Arrive} each.
+     */
+    public static final class Arrivals implements Response {
+        public final int firstCustomerId;
+        // ShopClock times of the arrivals
+        private final long[] arrivedAt;
 
-        public GetFail(ActorRef<Customer.Response> ofWhom) {
-            this.ofWhom = ofWhom;
+        /**
+         * @param arrivedAt the first count entries are the arrivals, they are copied
+         */
+        public Arrivals(int firstCustomerId, long[] arrivedAt, int count) {
+            this.firstCustomerId = firstCustomerId;
+            this.arrivedAt = Arrays.copyOf(arrivedAt, count);
+        }
+
+        public int size() {
+            return arrivedAt.length;
+        }
+
+        public long arrivedAt(int index) {
+            return arrivedAt[index];
         }
     }
 
+    /**
+     * Is triggered by the timer when the customer has finished thinking.
+     */
+    private enum NextAction implements Response {
+        INSTANCE
+    }
 
-    public static Behavior<Response> create(ActorRef<CashRegister.Request> cashRegister, ActorRef<LoadBalancer.Mixed> loadBalancer) {
-        return Behaviors.setup(context -> new Customer(context, loadBalancer, cashRegister));
+    /**
+     * Is triggered by the timer when the customer asks for the coffee again after the load balancer was busy.
+     */
+    private enum RetryCoffee implements Response {
+        INSTANCE
     }
 
-    private Customer(ActorContext<Response> context, ActorRef<LoadBalancer.Mixed> loadBalancer, ActorRef<CashRegister.Request> cashRegister) {
+    // upper bound of the backoff after the load balancer was busy
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(5);
+
+    /**
+     * @return the reply cached for the customer, created on first use; a fresh one for ids past the cache.
+     * The cache is shared by all actors without a lock: a reply only has final fields, so one which another
+     * thread put in is always complete, and a race creates an equal reply twice at worst.
+     */
+    private static <T extends Response> T cached(T[] cache, int customerId, IntFunction<T> create) {
+        if (customerId < 0 || customerId >= cache.length) {
+            return create.apply(customerId);
+        }
+        T reply = cache[customerId];
+        if (reply == null) {
+            reply = create.apply(customerId);
+            cache[customerId] = reply;
+        }
+        return reply;
+    }
+
+    /**
+     * Creates a customer who thinks two seconds between actions.
+     *
+     * @param id positive and unique in the shop
+     */
+    public static Behavior<Response> create(int id, ActorRef<CashRegister.Request> cashRegister, ActorRef<LoadBalancer.Mixed> loadBalancer) {
+        return create(id, cashRegister, loadBalancer, ThinkTime.fixed(Duration.ofSeconds(2)));
+    }
+
+    public static Behavior<Response> create(int id, ActorRef<CashRegister.Request> cashRegister, ActorRef<LoadBalancer.Mixed> loadBalancer,
+                                            ThinkTime thinkTime) {
+        return create(id, cashRegister, loadBalancer, thinkTime, new SplittableRandom());
+    }
+
+    /**
+     * Creates a customer who thinks between actions (closed-loop load).
+     *
+     * @param random decides the actions, the think time and the backoff; seeded, the customer acts the same in every run
+     */
+    public static Behavior<Response> create(int id, ActorRef<CashRegister.Request> cashRegister, ActorRef<LoadBalancer.Mixed> loadBalancer,
+                                            ThinkTime thinkTime, SplittableRandom random) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new Customer(context, timers, id, loadBalancer, cashRegister, thinkTime, 0, random)));
+    }
+
+    /**
+     * Creates a customer who acts once per {@link Arrive} and does nothing on its own (open-loop load).
+     *
+     * @param maxWaiting arrivals which may wait behind the one in progress, further ones are dropped; 0 for no limit
+     */
+    public static Behavior<Response> arriving(int id, ActorRef<CashRegister.Request> cashRegister, ActorRef<LoadBalancer.Mixed> loadBalancer,
+                                              int maxWaiting, SplittableRandom random) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new Customer(context, timers, id, loadBalancer, cashRegister, null, maxWaiting, random)));
+    }
+
+    private Customer(ActorContext<Response> context, TimerScheduler<Response> timers, int id, ActorRef<LoadBalancer.Mixed> loadBalancer,
+                     ActorRef<CashRegister.Request> cashRegister, ThinkTime thinkTime, int maxWaiting, SplittableRandom random) {
         super(context);
+        this.id = id;
         this.loadBalancer = loadBalancer;
         this.cashRegister = cashRegister;
-        if (Math.random() < 0.5) {
-            cashRegister.tell(new CashRegister.Recharge(this.getContext().getSelf()));
+        this.timers = timers;
+        this.thinkTime = thinkTime;
+        this.maxWaiting = maxWaiting;
+        this.random = random;
+        this.metrics = ShopMetrics.get(context.getSystem());
+        this.clock = ShopClock.get(context.getSystem());
+        if (thinkTime != null) {
+            arrivals = null;
+            nextAction(clock.nanoTime());
         } else {
-            loadBalancer.tell(new LoadBalancer.GetCoffee(this.getContext().getSelf()));
+            arrivals = new ArrayDeque<>();
         }
     }
 
@@ -102,6 +286,10 @@ public class Customer extends AbstractBehavior<Customer.Response> {
                 .onMessage(GetCoffeeMachine.class, this::onGetCoffeeMachine)
                 .onMessage(GetSuccess.class, this::onGetSuccess)
                 .onMessage(GetFail.class, this::onGetFail)
+                .onMessage(Busy.class, this::onBusy)
+                .onMessage(Arrive.class, this::onArrive)
+                .onMessageEquals(NextAction.INSTANCE, this::onNextAction)
+                .onMessageEquals(RetryCoffee.INSTANCE, this::onRetryCoffee)
                 .build();
     }
 
@@ -110,18 +298,13 @@ public class Customer extends AbstractBehavior<Customer.Response> {
      *
      * @param response Contains a success/no success response for the tried recharge
      * @return this
-     * @throws InterruptedException If sync fails...
-     */
-    //
-    private Behavior<Response> onRechargeSuccess(RechargeSuccess response) throws InterruptedException {
-        getContext().getLog().info("{}, you have successfully recharged your balance. Current balance: {}",
-                response.ofWhom, response.balance);
-        Thread.sleep(2000);
-        if (Math.random() < 0.5) {
-            cashRegister.tell(new CashRegister.Recharge(this.getContext().getSelf()));
-        } else {
-            loadBalancer.tell(new LoadBalancer.GetCoffee(this.getContext().getSelf()));
+     */
+    private Behavior<Response> onRechargeSuccess(RechargeSuccess response) {
+        if (log.isDebugEnabled()) {
+            getContext().getLog().debug("{}, you have successfully recharged your balance. Current balance: {}",
+                    getContext().getSelf(), response.balance);
         }
+        thinkThenAct();
         return this;
     }
 
@@ -129,17 +312,15 @@ public class Customer extends AbstractBehavior<Customer.Response> {
      * The customer doesn't have enough money for a coffee.
      *
      * @param command Used to track from whom the message is
-     * @throws InterruptedException If sync fails...
-     */
-    private Behavior<Response> onBalanceFail(BalanceFail command) throws InterruptedException {
-        getContext().getLog().info("{}, your current balance is insufficient for a coffee. Please try again.",
-                command.ofWhom);
-        Thread.sleep(2000);
-        if (Math.random() < 0.5) {
-            cashRegister.tell(new CashRegister.Recharge(this.getContext().getSelf()));
-        } else {
-            loadBalancer.tell(new LoadBalancer.GetCoffee(this.getContext().getSelf()));
+     * @return this
+     */
+    private Behavior<Response> onBalanceFail(BalanceFail command) {
+        if (log.isDebugEnabled()) {
+            getContext().getLog().debug("{}, your current balance is insufficient for a coffee. Please try again.",
+                    getContext().getSelf());
         }
+        metrics.recordBalanceFail();
+        thinkThenAct();
         return this;
     }
 
@@ -150,9 +331,11 @@ public class Customer extends AbstractBehavior<Customer.Response> {
      * @return this
      */
     private Behavior<Response> onGetCoffeeMachine(GetCoffeeMachine response) {
-        getContext().getLog().info("{}, you can now take coffee from {}",
-                this.getContext().getSelf(), response.coffeeMachine.path());
-        response.coffeeMachine.tell(new CoffeeMachine.GetCoffee(this.getContext().getSelf()));
+        if (log.isDebugEnabled()) {
+            getContext().getLog().debug("{}, you can now take coffee from {}",
+                    this.getContext().getSelf(), response.coffeeMachine.path());
+        }
+        response.coffeeMachine.tell(new CoffeeMachine.GetCoffee(this.getContext().getSelf(), id, cashRegister, response.reservation));
         return this;
     }
 
@@ -161,28 +344,118 @@ public class Customer extends AbstractBehavior<Customer.Response> {
      *
      * @param response Contains a success response
      * @return this
-     * @throws InterruptedException If sync fails...
-     */
-    //
-    private Behavior<Response> onGetSuccess(GetSuccess response) throws InterruptedException {
-        getContext().getLog().info("Here is your coffee {}!", response.ofWhom);
-        Thread.sleep(2000);
-        if (Math.random() < 0.5) {
-            cashRegister.tell(new CashRegister.Recharge(this.getContext().getSelf()));
-        } else {
-            loadBalancer.tell(new LoadBalancer.GetCoffee(this.getContext().getSelf()));
+     */
+    private Behavior<Response> onGetSuccess(GetSuccess response) {
+        if (log.isDebugEnabled()) {
+            getContext().getLog().debug("Here is your coffee {}!", getContext().getSelf());
         }
+        metrics.recordCoffee(clock.nanoTime() - coffeeRequestedAt);
+        thinkThenAct();
         return this;
     }
 
     /**
-     * If the coffee machines ran out of coffee. This service makes everything stop.
+     * If the coffee machines ran out of coffee. The customer comes back after thinking, when the machines may be refilled.
      *
      * @param response Contains the fail status
      * @return this
      */
     private Behavior<Response> onGetFail(GetFail response) {
-        getContext().getLog().info("Sorry {}, we have run out of coffee. Please try again later.", response.ofWhom);
-        return Behaviors.stopped();
+        if (log.isDebugEnabled()) {
+            getContext().getLog().debug("Sorry {}, we have run out of coffee. Please try again later.", getContext().getSelf());
+        }
+        metrics.recordGetFail();
+        thinkThenAct();
+        return this;
+    }
+
+    /**
+     * The load balancer is busy. The customer asks again after the given time plus an exponentially growing,
+     * random share of it, so turned away customers don't come back all at once.
+     *
+     * @param response Contains the time after which the load balancer may take the request
+     * @return this
+     */
+    private Behavior<Response> onBusy(Busy response) {
+        if (log.isDebugEnabled()) {
+            getContext().getLog().debug("{}, the shop is busy. Please try again in {} ms.", getContext().getSelf(),
+                    response.retryAfter.toMillis());
+        }
+        long base = Math.max(1, response.retryAfter.toNanos());
+        long ceiling = Math.min(MAX_BACKOFF.toNanos(), base << Math.min(busyAttempts, 20));
+        busyAttempts++;
+        metrics.recordBusy();
+        long backoff = base + random.nextLong(Math.max(1, ceiling));
+        timers.startSingleTimer(RetryCoffee.INSTANCE, Duration.ofNanos(Math.min(backoff, MAX_BACKOFF.toNanos())));
+        return this;
+    }
+
+    /**
+     * The backoff is over, the customer asks for the coffee again.
+     *
+     * @return this
+     */
+    private Behavior<Response> onRetryCoffee() {
+        // coffeeRequestedAt stays the time of the first request, so the latency includes the backoffs
+        loadBalancer.tell(new LoadBalancer.GetCoffee(this.getContext().getSelf(), id));
+        return this;
+    }
+
+    /**
+     * The customer arrives in the shop. An arrival while the previous one is not done yet waits for it,
+     * and its coffee latency includes that wait; if too many are waiting already, it is dropped.
+     *
+     * @param arrive Contains the time of the arrival
+     * @return this
+     */
+    private Behavior<Response> onArrive(Arrive arrive) {
+        // the first arrival is the one in progress
+        if (maxWaiting > 0 && arrivals.size() > maxWaiting) {
+            metrics.recordDroppedArrival();
+            return this;
+        }
+        arrivals.add(arrive.arrivedAt);
+        if (arrivals.size() == 1) {
+            nextAction(arrive.arrivedAt);
+        }
+        return this;
+    }
+
+    /**
+     * The customer has finished thinking and decides what to do next.
+     *
+     * @return this
+     */
+    private Behavior<Response> onNextAction() {
+        nextAction(clock.nanoTime());
+        return this;
+    }
+
+    /**
+     * Waits for the think time without blocking the dispatcher thread, or in open-loop load goes on with the
+     * next arrival.
+     */
+    private void thinkThenAct() {
+        busyAttempts = 0;
+        if (thinkTime != null) {
+            timers.startSingleTimer(NextAction.INSTANCE, thinkTime.next(random));
+            return;
+        }
+        arrivals.poll();
+        if (!arrivals.isEmpty()) {
+            nextAction(arrivals.peek());
+        }
+    }
+
+    /**
+     * @param startedAt ShopClock time from which the coffee latency is measured
+     */
+    private void nextAction(long startedAt) {
+        if (random.nextBoolean()) {
+            cashRegister.tell(new CashRegister.Recharge(this.getContext().getSelf(), id));
+        } else {
+            coffeeRequestedAt = startedAt;
+            loadBalancer.tell(new LoadBalancer.GetCoffee(this.getContext().getSelf(), id));
+        }
     }
-}
\ No newline at end of file
+}
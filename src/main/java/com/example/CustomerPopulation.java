@@ -0,0 +1,377 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+
+/**
+ * Many customers in one actor, for populations too large for an actor per customer
+ * ({@code coffee.customer-population-size}). The customers act like {@link Customer}s and speak the same protocol,
+ * every message carries the id of the customer it is for. Their state is kept in primitive arrays indexed by id,
+ * and their think times and backoffs in one heap of due times with a single timer for the earliest one, so a
+ * customer costs a few array slots here instead of an actor with its own timer; the README has the footprint
+ * measured with {@code CustomerFootprintBenchmark}.
+ */
+public class CustomerPopulation extends AbstractBehavior<Customer.Response> {
+    // for the level check, see LoadBalancer
+    private static final Logger log = LoggerFactory.getLogger(CustomerPopulation.class);
+
+    // upper bound of the backoff after the load balancer was busy
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(5);
+
+    // the customers have the ids firstId to firstId + size - 1, and the index id - firstId in the arrays
+    private final int firstId;
+    private final ActorRef<LoadBalancer.Mixed> loadBalancer;
+    private final ActorRef<CashRegister.Request> cashRegister;
+    private final TimerScheduler<Customer.Response> timers;
+    // null for customers who only act on arrivals of the open-loop load
+    private final ThinkTime thinkTime;
+    private final SplittableRandom random;
+    private final ShopMetrics metrics;
+    private final ShopClock clock;
+    // when the customer last asked the load balancer for a coffee
+    private final long[] coffeeRequestedAt;
+    // how often in a row the load balancer was busy, up to the largest backoff
+    private final byte[] busyAttempts;
+    // customers waiting for their think time or backoff, a binary min-heap of ShopClock due times
+    private final long[] dueAt;
+    private final int[] dueCustomer;
+    private int waiting;
+    // customers whose entry in the heap is a backoff rather than a think time
+    private final BitSet retrying = new BitSet();
+    // open-loop load: customers with an arrival in progress, and the arrival times waiting behind it by id
+    private final BitSet acting = new BitSet();
+    private final Map<Integer, Queue<Long>> arrivals = new HashMap<>();
+    // arrivals which may wait behind the one in progress, 0 for no limit
+    private final int maxWaiting;
+    // ShopClock time the wake timer is set for, Long.MAX_VALUE if it is not set
+    private long wakeAt = Long.MAX_VALUE;
+
+    /**
+     * Is triggered by the timer when the first customer in the heap is due.
+     */
+    private enum Wake implements Customer.Response {
+        INSTANCE
+    }
+
+    /**
+     * Creates customers who think between actions (closed-loop load). They all act for the first time right away.
+     *
+     * @param firstId the id of the first customer, the others follow without gaps
+     * @param random  decides the actions, the think times and the backoffs of all customers of the population
+     */
+    public static Behavior<Customer.Response> create(int firstId, int size, ActorRef<CashRegister.Request> cashRegister,
+                                                     ActorRef<LoadBalancer.Mixed> loadBalancer, ThinkTime thinkTime,
+                                                     SplittableRandom random) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new CustomerPopulation(context, timers, firstId, size, loadBalancer, cashRegister, thinkTime, 0, random)));
+    }
+
+    /**
+     * Creates customers who act once per {@link Customer.Arrive} and do nothing on their own (open-loop load).
+     *
+     * @param maxWaiting arrivals which may wait behind the one in progress of a customer, further ones are dropped;
+     *                   0 for no limit
+     */
+    public static Behavior<Customer.Response> arriving(int firstId, int size, ActorRef<CashRegister.Request> cashRegister,
+                                                       ActorRef<LoadBalancer.Mixed> loadBalancer, int maxWaiting,
+                                                       SplittableRandom random) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new CustomerPopulation(context, timers, firstId, size, loadBalancer, cashRegister, null, maxWaiting, random)));
+    }
+
+    private CustomerPopulation(ActorContext<Customer.Response> context, TimerScheduler<Customer.Response> timers, int firstId,
+                               int size, ActorRef<LoadBalancer.Mixed> loadBalancer, ActorRef<CashRegister.Request> cashRegister,
+                               ThinkTime thinkTime, int maxWaiting, SplittableRandom random) {
+        super(context);
+        if (firstId <= 0 || size <= 0) {
+            throw new IllegalArgumentException("A population needs positive ids and at least one customer, not "
+                    + size + " from " + firstId);
+        }
+        this.firstId = firstId;
+        this.loadBalancer = loadBalancer;
+        this.cashRegister = cashRegister;
+        this.timers = timers;
+        this.thinkTime = thinkTime;
+        this.maxWaiting = maxWaiting;
+        this.random = random;
+        this.metrics = ShopMetrics.get(context.getSystem());
+        this.clock = ShopClock.get(context.getSystem());
+        coffeeRequestedAt = new long[size];
+        busyAttempts = new byte[size];
+        // every customer waits for at most one think time or backoff
+        dueAt = new long[size];
+        dueCustomer = new int[size];
+        if (thinkTime != null) {
+            long now = clock.nanoTime();
+            for (int customer = 0; customer < size; customer++) {
+                nextAction(customer, now);
+            }
+        }
+    }
+
+    @Override
+    public Receive<Customer.Response> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(Customer.RechargeSuccess.class, this::onRechargeSuccess)
+                .onMessage(Customer.BalanceFail.class, this::onBalanceFail)
+                .onMessage(Customer.GetCoffeeMachine.class, this::onGetCoffeeMachine)
+                .onMessage(Customer.GetSuccess.class, this::onGetSuccess)
+                .onMessage(Customer.GetFail.class, this::onGetFail)
+                .onMessage(Customer.Busy.class, this::onBusy)
+                .onMessage(Customer.Arrive.class, this::onArrive)
+                .onMessage(Customer.Arrivals.class, this::onArrivals)
+                .onMessageEquals(Wake.INSTANCE, this::onWake)
+                .build();
+    }
+
+    /**
+     * The recharge of the customer was successful.
+     *
+     * @param response Contains the customer and the new balance
+     * @return this
+     */
+    private Behavior<Customer.Response> onRechargeSuccess(Customer.RechargeSuccess response) {
+        if (log.isDebugEnabled()) {
+            getContext().getLog().debug("Customer {} recharged the balance to {}", response.customerId, response.balance);
+        }
+        thinkThenAct(index(response.customerId));
+        return this;
+    }
+
+    /**
+     * The customer doesn't have enough money for a coffee.
+     *
+     * @param response Contains the customer
+     * @return this
+     */
+    private Behavior<Customer.Response> onBalanceFail(Customer.BalanceFail response) {
+        metrics.recordBalanceFail();
+        thinkThenAct(index(response.customerId));
+        return this;
+    }
+
+    /**
+     * The customer orders at the machine the load balancer has chosen.
+     *
+     * @param response Contains the customer, the machine and the held credit
+     * @return this
+     */
+    private Behavior<Customer.Response> onGetCoffeeMachine(Customer.GetCoffeeMachine response) {
+        response.coffeeMachine.tell(new CoffeeMachine.GetCoffee(getContext().getSelf(), response.customerId, cashRegister,
+                response.reservation));
+        return this;
+    }
+
+    /**
+     * The customer received a coffee.
+     *
+     * @param response Contains the customer
+     * @return this
+     */
+    private Behavior<Customer.Response> onGetSuccess(Customer.GetSuccess response) {
+        int customer = index(response.customerId);
+        metrics.recordCoffee(clock.nanoTime() - coffeeRequestedAt[customer]);
+        thinkThenAct(customer);
+        return this;
+    }
+
+    /**
+     * The machines ran out of coffee, the customer comes back after thinking.
+     *
+     * @param response Contains the customer
+     * @return this
+     */
+    private Behavior<Customer.Response> onGetFail(Customer.GetFail response) {
+        metrics.recordGetFail();
+        thinkThenAct(index(response.customerId));
+        return this;
+    }
+
+    /**
+     * The load balancer is busy, the customer backs off as in {@link Customer}.
+     *
+     * @param response Contains the customer and the time after which the load balancer may take the request
+     * @return this
+     */
+    private Behavior<Customer.Response> onBusy(Customer.Busy response) {
+        int customer = index(response.customerId);
+        long base = Math.max(1, response.retryAfter.toNanos());
+        long ceiling = Math.min(MAX_BACKOFF.toNanos(), base << busyAttempts[customer]);
+        if (busyAttempts[customer] < 20) {
+            busyAttempts[customer]++;
+        }
+        metrics.recordBusy();
+        long backoff = Math.min(base + random.nextLong(Math.max(1, ceiling)), MAX_BACKOFF.toNanos());
+        retrying.set(customer);
+        schedule(customer, clock.nanoTime() + backoff);
+        return this;
+    }
+
+    /**
+     * The customer arrives in the shop, and waits for its previous arrival if that is not done yet; if too many
+     * are waiting already, the arrival is dropped.
+     *
+     * @param arrive Contains the customer and the time of the arrival
+     * @return this
+     */
+    private Behavior<Customer.Response> onArrive(Customer.Arrive arrive) {
+        arrive(arrive.customerId, arrive.arrivedAt);
+        return this;
+    }
+
+    /**
+     * Consecutive customers arrive in the shop, each as with {@link Customer.Arrive}.
+     *
+     * @param arrivals Contains the first customer and the times of the arrivals
+     * @return this
+     */
+    private Behavior<Customer.Response> onArrivals(Customer.Arrivals arrivals) {
+        for (int i = 0; i < arrivals.size(); i++) {
+            arrive(arrivals.firstCustomerId + i, arrivals.arrivedAt(i));
+        }
+        return this;
+    }
+
+    private void arrive(int customerId, long arrivedAt) {
+        int customer = index(customerId);
+        if (acting.get(customer)) {
+            Queue<Long> queue = arrivals.computeIfAbsent(customerId, id -> new ArrayDeque<>());
+            if (maxWaiting > 0 && queue.size() >= maxWaiting) {
+                metrics.recordDroppedArrival();
+            } else {
+                queue.add(arrivedAt);
+            }
+        } else {
+            acting.set(customer);
+            nextAction(customer, arrivedAt);
+        }
+    }
+
+    /**
+     * Every customer whose think time or backoff is over acts, then the timer is set for the next one.
+     *
+     * @return this
+     */
+    private Behavior<Customer.Response> onWake() {
+        wakeAt = Long.MAX_VALUE;
+        long now = clock.nanoTime();
+        while (waiting > 0 && dueAt[0] <= now) {
+            int customer = poll();
+            if (retrying.get(customer)) {
+                retrying.clear(customer);
+                // coffeeRequestedAt stays the time of the first request, so the latency includes the backoffs
+                loadBalancer.tell(new LoadBalancer.GetCoffee(getContext().getSelf(), firstId + customer));
+            } else {
+                nextAction(customer, now);
+            }
+        }
+        if (waiting > 0) {
+            wakeAt = dueAt[0];
+            timers.startSingleTimer(Wake.INSTANCE, Duration.ofNanos(wakeAt - now));
+        }
+        return this;
+    }
+
+    private int index(int customerId) {
+        return customerId - firstId;
+    }
+
+    /**
+     * Lets the customer think, or in open-loop load goes on with its next arrival.
+     */
+    private void thinkThenAct(int customer) {
+        busyAttempts[customer] = 0;
+        if (thinkTime != null) {
+            schedule(customer, clock.nanoTime() + thinkTime.next(random).toNanos());
+            return;
+        }
+        Queue<Long> next = arrivals.get(firstId + customer);
+        if (next == null) {
+            acting.clear(customer);
+            return;
+        }
+        long arrivedAt = next.poll();
+        if (next.isEmpty()) {
+            arrivals.remove(firstId + customer);
+        }
+        nextAction(customer, arrivedAt);
+    }
+
+    /**
+     * @param startedAt ShopClock time from which the coffee latency is measured
+     */
+    private void nextAction(int customer, long startedAt) {
+        if (random.nextBoolean()) {
+            cashRegister.tell(new CashRegister.Recharge(getContext().getSelf(), firstId + customer));
+        } else {
+            coffeeRequestedAt[customer] = startedAt;
+            loadBalancer.tell(new LoadBalancer.GetCoffee(getContext().getSelf(), firstId + customer));
+        }
+    }
+
+    /**
+     * Adds the customer to the heap and moves the timer forward if the customer is due first.
+     */
+    private void schedule(int customer, long due) {
+        int child = waiting++;
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (dueAt[parent] <= due) {
+                break;
+            }
+            dueAt[child] = dueAt[parent];
+            dueCustomer[child] = dueCustomer[parent];
+            child = parent;
+        }
+        dueAt[child] = due;
+        dueCustomer[child] = customer;
+        if (due < wakeAt) {
+            wakeAt = due;
+            timers.startSingleTimer(Wake.INSTANCE, Duration.ofNanos(Math.max(0, due - clock.nanoTime())));
+        }
+    }
+
+    /**
+     * @return the customer due first, removed from the heap
+     */
+    private int poll() {
+        int first = dueCustomer[0];
+        int last = --waiting;
+        long due = dueAt[last];
+        int customer = dueCustomer[last];
+        int parent = 0;
+        int child;
+        while ((child = 2 * parent + 1) < last) {
+            if (child + 1 < last && dueAt[child + 1] < dueAt[child]) {
+                child++;
+            }
+            if (due <= dueAt[child]) {
+                break;
+            }
+            dueAt[parent] = dueAt[child];
+            dueCustomer[parent] = dueCustomer[child];
+            parent = child;
+        }
+        dueAt[parent] = due;
+        dueCustomer[parent] = customer;
+        return first;
+    }
+}
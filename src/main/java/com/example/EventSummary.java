@@ -0,0 +1,91 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the events of the message hot path and logs one summary line per interval,
+ * in place of one log line per message. The per-message lines are still there at DEBUG.
+ */
+public final class EventSummary implements Extension {
+
+    private static final Logger log = LoggerFactory.getLogger(EventSummary.class);
+
+    public enum Event {
+        COFFEE_REQUESTED("coffee requests"),
+        SHED("requests turned away"),
+        RECHARGED("recharges"),
+        CREDIT_SUCCESS("credit successes"),
+        CREDIT_FAIL("credit fails"),
+        CREDIT_RELEASED("released credits"),
+        CREDIT_EXPIRED("expired credit holds"),
+        ROUTED("customers routed"),
+        COFFEE_SERVED("coffees served"),
+        MACHINE_EMPTY("empty machine fails"),
+        REFILLED("refills");
+
+        final String label;
+
+        Event(String label) {
+            this.label = label;
+        }
+    }
+
+    public static final ExtensionId<EventSummary> ID = new ExtensionId<EventSummary>() {
+        @Override
+        public EventSummary createExtension(ActorSystem<?> system) {
+            return new EventSummary(system);
+        }
+    };
+
+    private final LongAdder[] counts = new LongAdder[Event.values().length];
+    private final long[] reported = new long[Event.values().length];
+    private final Duration interval;
+
+    public static EventSummary get(ActorSystem<?> system) {
+        return system.registerExtension(ID);
+    }
+
+    private EventSummary(ActorSystem<?> system) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+        interval = system.settings().config().getDuration("coffee.logging.summary-interval");
+        if (!interval.isZero()) {
+            system.scheduler().scheduleAtFixedRate(interval, interval, this::logSummary, system.executionContext());
+        }
+    }
+
+    public void record(Event event) {
+        counts[event.ordinal()].increment();
+    }
+
+    private synchronized void logSummary() {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        StringBuilder line = new StringBuilder("Last ").append(interval.toMillis()).append(" ms:");
+        boolean any = false;
+        for (Event event : Event.values()) {
+            long total = counts[event.ordinal()].sum();
+            long delta = total - reported[event.ordinal()];
+            reported[event.ordinal()] = total;
+            if (delta > 0) {
+                line.append(any ? ", " : " ").append(delta).append(' ').append(event.label);
+                any = true;
+            }
+        }
+        if (any) {
+            log.info(line.toString());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.typed.javadsl.Adapter;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import akka.dispatch.UnboundedMessageQueueSemantics;
+import com.typesafe.config.Config;
+import scala.Option;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unbounded mailbox which records its depth in {@link ShopMetrics} every time a message is taken out.
+ * The role is read from the {@code role} key of the mailbox configuration.
+ */
+public final class InstrumentedMailbox implements MailboxType, ProducesMessageQueue<InstrumentedMailbox.InstrumentedQueue> {
+
+    private final ShopMetrics.Role role;
+
+    public static final class InstrumentedQueue implements MessageQueue, UnboundedMessageQueueSemantics {
+        private final ConcurrentLinkedQueue<Envelope> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final ShopMetrics metrics;
+        private final ShopMetrics.Role role;
+
+        InstrumentedQueue(ShopMetrics metrics, ShopMetrics.Role role) {
+            this.metrics = metrics;
+            this.role = role;
+        }
+
+        @Override
+        public void enqueue(ActorRef receiver, Envelope handle) {
+            // counted before it can be taken out, so the depth a consumer records is never below 1
+            depth.incrementAndGet();
+            queue.offer(handle);
+        }
+
+        @Override
+        public Envelope dequeue() {
+            Envelope envelope = queue.poll();
+            if (envelope != null) {
+                // depth including the message just taken out
+                metrics.recordMailboxDepth(role, depth.getAndDecrement());
+            }
+            return envelope;
+        }
+
+        @Override
+        public int numberOfMessages() {
+            return depth.get();
+        }
+
+        @Override
+        public boolean hasMessages() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+            Envelope envelope;
+            while ((envelope = queue.poll()) != null) {
+                depth.decrementAndGet();
+                deadLetters.enqueue(owner, envelope);
+            }
+        }
+    }
+
+    // used by akka when the mailbox is created from configuration
+    public InstrumentedMailbox(ActorSystem.Settings settings, Config config) {
+        this.role = ShopMetrics.Role.fromConfigName(config.getString("role"));
+    }
+
+    @Override
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+        return new InstrumentedQueue(ShopMetrics.get(Adapter.toTyped(system.get())), role);
+    }
+}
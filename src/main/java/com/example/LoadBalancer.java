@@ -10,28 +10,74 @@ import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.actor.typed.receptionist.Receptionist;
+import akka.actor.typed.receptionist.ServiceKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class LoadBalancer extends AbstractBehavior<LoadBalancer.Mixed> {
+    // guards the per-message debug lines: getContext().getLog() copies the MDC of the actor on every call,
+    // which costs more than the rest of a hop when DEBUG is off
+    private static final Logger log = LoggerFactory.getLogger(LoadBalancer.class);
 
-    private final ActorRef<CoffeeMachine.Request>[] coffeeMachinesList;
+    // grows when machines register with the receptionist, see onMachinesChanged
+    private ActorRef<CoffeeMachine.Request>[] coffeeMachinesList;
+    // the machines given at creation come first and stay, the rest come and go with the receptionist
+    private final int givenMachines;
     private final ActorRef<CashRegister.Request> cashRegister;
-    private ActorRef<CoffeeMachine.Request> coffeeMachineMax;
-    private int max = 10;
-    private int count = 0;
+
+    // cached supply view, indexed like coffeeMachinesList and kept up to date by the machines themselves
+    private final Map<ActorRef<CoffeeMachine.Request>, Integer> machineIndex = new HashMap<>();
+    private final SupplyView view;
+    private final MachineSelector selector;
+    private final EventSummary events;
+
+    // customers waiting for their balance check, sent to the cash register as one batch
+    private final TimerScheduler<Mixed> timers;
+    private final int creditBatchSize;
+    private final Duration creditBatchWindow;
+    private final int[] pendingCreditIds;
+    private int pendingCredit;
+    // where to answer the customers of the batches sent to the cash register, by id; a customer asks for
+    // one coffee at a time, so its id is there at most once
+    private final Map<Integer, ActorRef<Customer.Response>> creditCustomers = new HashMap<>();
+    // true sends paid customers straight to the machine instead of telling them which machine to use
+    private final boolean forwardToMachine;
+
+    // requests admitted but not answered yet: waiting for the cash register, or sent to a machine which has not handled them
+    private final Admission admission;
+    private int awaitingCredit;
+    private long routedTotal;
+    private long handledTotal;
+    // for the query API: coffee requests, those shed by the admission control and those no machine had coffee for
+    private long requested;
+    private long shed;
+    private long noMachine;
 
     public interface Mixed {
     }
 
     /**
-     * Is triggered after cash register confirmed that the customer has enough money
+     * Is triggered after cash register confirmed that the customer has enough money and holds a credit for the coffee
      */
-    public static class CreditSuccess implements Mixed {
-        public ActorRef<CashRegister.Request> sender;
-        public ActorRef<Customer.Response> ofWhom;
+    public static final class CreditSuccess implements Mixed {
+        public final ActorRef<Customer.Response> ofWhom;
+        public final int customerId;
+        public final long reservation;
 
-        public CreditSuccess(ActorRef<CashRegister.Request> sender, ActorRef<Customer.Response> ofWhom) {
-            this.sender = sender;
+        public CreditSuccess(ActorRef<Customer.Response> ofWhom, int customerId, long reservation) {
             this.ofWhom = ofWhom;
+            this.customerId = customerId;
+            this.reservation = reservation;
         }
     }
 
@@ -39,41 +85,98 @@ public class LoadBalancer extends AbstractBehavior<LoadBalancer.Mixed> {
      * Is triggered after cash register confirmed that the customer doesn't have enough money
      */
     public static final class CreditFail implements Mixed {
-        public ActorRef<CashRegister.Request> sender;
-        public ActorRef<Customer.Response> ofWhom;
+        public final ActorRef<Customer.Response> ofWhom;
+        public final int customerId;
 
-        public CreditFail(ActorRef<CashRegister.Request> sender, ActorRef<Customer.Response> ofWhom) {
-            this.sender = sender;
+        public CreditFail(ActorRef<Customer.Response> ofWhom, int customerId) {
             this.ofWhom = ofWhom;
+            this.customerId = customerId;
         }
     }
 
     /**
-     * Is triggered after receiving the supply report from a coffee machine
+     * Is triggered after cash register checked the balance of a batch of customers.
+     * The customers whose bit is set have got a credit held under the reservation at the same index,
+     * the others don't have enough money.
      */
-    public static final class GetSupply implements Mixed {
-        public ActorRef<CoffeeMachine.Request> sender;
-        public ActorRef<Customer.Response> ofWhom;
-        public int remainingCoffee;
+    public static final class CreditBatch implements Mixed {
+        private final int[] customerIds;
+        private final BitSet granted;
+        private final long[] reservations;
 
-        public GetSupply(ActorRef<CoffeeMachine.Request> sender,
-                         ActorRef<Customer.Response> ofWhom, int remainingCoffee) {
-            this.sender = sender;
-            this.ofWhom = ofWhom;
-            this.remainingCoffee = remainingCoffee;
+        public CreditBatch(int[] customerIds, BitSet granted, long[] reservations) {
+            this.customerIds = customerIds.clone();
+            this.granted = (BitSet) granted.clone();
+            this.reservations = reservations.clone();
+        }
+
+        public int size() {
+            return customerIds.length;
+        }
+
+        public int customerId(int index) {
+            return customerIds[index];
+        }
+
+        public boolean granted(int index) {
+            return granted.get(index);
+        }
+
+        /**
+         * @return the index of the next customer from index on who got the credit, -1 if there is none
+         */
+        public int nextGranted(int index) {
+            return granted.nextSetBit(index);
+        }
+
+        /**
+         * @return the reservation of the credit held for the customer, 0 if it got none
+         */
+        public long reservation(int index) {
+            return reservations[index];
         }
     }
 
     /**
-     * Is triggered after receiving all the supply reports from 3 coffee machines
+     * Is triggered when the batch window of the pending balance checks is over.
      */
-    public static final class GotAllSupply implements Mixed {
-        public ActorRef<LoadBalancer.Mixed> sender;
-        public ActorRef<Customer.Response> ofWhom;
+    private enum FlushCredit implements Mixed {
+        INSTANCE
+    }
+
+    /**
+     * Is triggered when the receptionist knows a new set of machines, through the listing adapter.
+     */
+    private static final class MachinesChanged implements Mixed {
+        private final Set<ActorRef<CoffeeMachine.Request>> machines;
+
+        private MachinesChanged(Set<ActorRef<CoffeeMachine.Request>> machines) {
+            this.machines = machines;
+        }
+    }
 
-        public GotAllSupply(ActorRef<LoadBalancer.Mixed> sender, ActorRef<Customer.Response> ofWhom) {
+    /**
+     * Is triggered when a coffee machine reports its supply, which it does after subscribing
+     * and then whenever its supply changes (or on its report interval).
+     */
+    public static final class GetSupply implements Mixed {
+        public final ActorRef<CoffeeMachine.Request> sender;
+        public final int remainingCoffee;
+        public final long handled;
+        public final double brewRate;
+        // true while the machine is being refilled
+        public final boolean refilling;
+        // requests waiting at the machine for their brew cycle
+        public final int queued;
+
+        public GetSupply(ActorRef<CoffeeMachine.Request> sender, int remainingCoffee, long handled, double brewRate,
+                         boolean refilling, int queued) {
             this.sender = sender;
-            this.ofWhom = ofWhom;
+            this.remainingCoffee = remainingCoffee;
+            this.handled = handled;
+            this.brewRate = brewRate;
+            this.refilling = refilling;
+            this.queued = queued;
         }
     }
 
@@ -81,21 +184,251 @@ public class LoadBalancer extends AbstractBehavior<LoadBalancer.Mixed> {
      * Is triggered after customer asks load balancer for a coffee
      */
     public static final class GetCoffee implements Mixed {
-        public ActorRef<Customer.Response> sender;
+        public final ActorRef<Customer.Response> sender;
+        public final int customerId;
 
-        public GetCoffee(ActorRef<Customer.Response> sender) {
+        public GetCoffee(ActorRef<Customer.Response> sender, int customerId) {
             this.sender = sender;
+            this.customerId = customerId;
         }
     }
 
+    /**
+     * Is triggered when the query API asks for the state of the load balancer. It is only asked on the node of the
+     * load balancer, so {@link CoffeeSerializer} does not support it.
+     */
+    public static final class GetStats implements Mixed {
+        public final ActorRef<Stats> replyTo;
+
+        public GetStats(ActorRef<Stats> replyTo) {
+            this.replyTo = replyTo;
+        }
+    }
+
+    /**
+     * Snapshot of the load balancer. The arrays are indexed like {@link #machines}.
+     */
+    public static final class Stats {
+        // admitted requests which are not answered yet
+        public final int inFlight;
+        public final int awaitingCredit;
+        // customers collected for the next balance check batch
+        public final int pendingCredit;
+        public final long requested;
+        public final long shed;
+        // paid customers no machine had coffee for
+        public final long noMachine;
+        public final long routed;
+        public final long handled;
+        public final List<ActorRef<CoffeeMachine.Request>> machines;
+        private final long[] routedTo;
+        // customers sent to the machine which it has not reported as handled yet
+        private final int[] outstanding;
+        // supply and queue as last reported by the machine
+        private final int[] remainingCoffee;
+        private final int[] queued;
+        private final boolean[] refilling;
+        // machines which left the cluster
+        private final boolean[] removed;
+
+        public Stats(int inFlight, int awaitingCredit, int pendingCredit, long requested, long shed, long noMachine,
+                     long routed, long handled, List<ActorRef<CoffeeMachine.Request>> machines, long[] routedTo,
+                     int[] outstanding, int[] remainingCoffee, int[] queued, boolean[] refilling, boolean[] removed) {
+            this.inFlight = inFlight;
+            this.awaitingCredit = awaitingCredit;
+            this.pendingCredit = pendingCredit;
+            this.requested = requested;
+            this.shed = shed;
+            this.noMachine = noMachine;
+            this.routed = routed;
+            this.handled = handled;
+            this.machines = List.copyOf(machines);
+            this.routedTo = routedTo.clone();
+            this.outstanding = outstanding.clone();
+            this.remainingCoffee = remainingCoffee.clone();
+            this.queued = queued.clone();
+            this.refilling = refilling.clone();
+            this.removed = removed.clone();
+        }
+
+        public long routedTo(int machine) {
+            return routedTo[machine];
+        }
+
+        public int outstanding(int machine) {
+            return outstanding[machine];
+        }
+
+        public int remainingCoffee(int machine) {
+            return remainingCoffee[machine];
+        }
+
+        public int queued(int machine) {
+            return queued[machine];
+        }
+
+        public boolean refilling(int machine) {
+            return refilling[machine];
+        }
+
+        public boolean removed(int machine) {
+            return removed[machine];
+        }
+    }
+
+    /**
+     * Supply of the machines as last reported by them, plus the customers sent there since.
+     */
+    private static final class SupplyView implements MachineSelector.View {
+        private int[] remainingCoffee;
+        private double[] brewRate;
+        private boolean[] refilling;
+        private int[] queued;
+        // customers sent to a machine vs. requests the machine reported as handled
+        private long[] routed;
+        private long[] handled;
+        // machines which left the cluster keep their index, but get no more customers
+        private boolean[] removed;
+
+        SupplyView(int machines) {
+            remainingCoffee = new int[machines];
+            brewRate = new double[machines];
+            refilling = new boolean[machines];
+            queued = new int[machines];
+            routed = new long[machines];
+            handled = new long[machines];
+            removed = new boolean[machines];
+        }
+
+        /**
+         * @return the index of the new machine, which has no coffee until it reports its supply
+         */
+        int add() {
+            int index = remainingCoffee.length;
+            remainingCoffee = Arrays.copyOf(remainingCoffee, index + 1);
+            brewRate = Arrays.copyOf(brewRate, index + 1);
+            refilling = Arrays.copyOf(refilling, index + 1);
+            queued = Arrays.copyOf(queued, index + 1);
+            routed = Arrays.copyOf(routed, index + 1);
+            handled = Arrays.copyOf(handled, index + 1);
+            removed = Arrays.copyOf(removed, index + 1);
+            return index;
+        }
+
+        @Override
+        public int size() {
+            return remainingCoffee.length;
+        }
+
+        @Override
+        public int available(int machine) {
+            // a machine being refilled is left alone until it is full again
+            if (refilling[machine] || removed[machine]) {
+                return 0;
+            }
+            return Math.max(0, remainingCoffee[machine] - outstanding(machine));
+        }
+
+        @Override
+        public int outstanding(int machine) {
+            return (int) Math.max(0, routed[machine] - handled[machine]);
+        }
+
+        @Override
+        public int queued(int machine) {
+            return queued[machine];
+        }
+
+        @Override
+        public double brewRate(int machine) {
+            return brewRate[machine];
+        }
+    }
+
+    /**
+     * Creates a load balancer which sends customers to the machine with the most coffee left.
+     */
     public static Behavior<Mixed> create(ActorRef<CashRegister.Request> cashRegister, ActorRef<CoffeeMachine.Request>[] coffeeMachinesList) {
-        return Behaviors.setup(context -> new LoadBalancer(context, cashRegister, coffeeMachinesList));
+        return create(cashRegister, coffeeMachinesList, MachineSelector.maxRemaining());
+    }
+
+    public static Behavior<Mixed> create(ActorRef<CashRegister.Request> cashRegister, ActorRef<CoffeeMachine.Request>[] coffeeMachinesList,
+                                         MachineSelector selector) {
+        return create(cashRegister, coffeeMachinesList, selector, 1, Duration.ZERO);
+    }
+
+    /**
+     * Creates a load balancer which checks the balance of up to {@code creditBatchSize} customers with one
+     * message to the cash register. A batch is sent when it is full or {@code creditBatchWindow} after its
+     * first customer; a zero window sends it once the requests already queued at the load balancer are taken.
+     * A batch size of 1 checks every customer on its own.
+     */
+    public static Behavior<Mixed> create(ActorRef<CashRegister.Request> cashRegister, ActorRef<CoffeeMachine.Request>[] coffeeMachinesList,
+                                         MachineSelector selector, int creditBatchSize, Duration creditBatchWindow) {
+        return create(cashRegister, coffeeMachinesList, selector, creditBatchSize, creditBatchWindow, false);
+    }
+
+    /**
+     * @param forwardToMachine true sends a paid customer's order straight to the selected machine, which answers
+     *                         the customer, instead of sending the customer the machine to order from
+     */
+    public static Behavior<Mixed> create(ActorRef<CashRegister.Request> cashRegister, ActorRef<CoffeeMachine.Request>[] coffeeMachinesList,
+                                         MachineSelector selector, int creditBatchSize, Duration creditBatchWindow,
+                                         boolean forwardToMachine) {
+        return create(cashRegister, coffeeMachinesList, selector, creditBatchSize, creditBatchWindow, forwardToMachine,
+                Admission.unlimited());
+    }
+
+    /**
+     * @param admission decides which coffee requests are admitted, the others get {@link Customer.Busy};
+     *                  the load balancer becomes its only user
+     */
+    public static Behavior<Mixed> create(ActorRef<CashRegister.Request> cashRegister, ActorRef<CoffeeMachine.Request>[] coffeeMachinesList,
+                                         MachineSelector selector, int creditBatchSize, Duration creditBatchWindow,
+                                         boolean forwardToMachine, Admission admission) {
+        return create(cashRegister, coffeeMachinesList, selector, creditBatchSize, creditBatchWindow, forwardToMachine,
+                admission, null);
+    }
+
+    /**
+     * @param machineKey the load balancer also sends customers to every machine registered under the key with the
+     *                   receptionist, on any node of the cluster; null to only use the given machines
+     */
+    public static Behavior<Mixed> create(ActorRef<CashRegister.Request> cashRegister, ActorRef<CoffeeMachine.Request>[] coffeeMachinesList,
+                                         MachineSelector selector, int creditBatchSize, Duration creditBatchWindow,
+                                         boolean forwardToMachine, Admission admission, ServiceKey<CoffeeMachine.Request> machineKey) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new LoadBalancer(context, timers, cashRegister, coffeeMachinesList, selector, creditBatchSize, creditBatchWindow,
+                        forwardToMachine, admission, machineKey)));
     }
 
-    public LoadBalancer(ActorContext<Mixed> context, ActorRef<CashRegister.Request> cashRegister, ActorRef<CoffeeMachine.Request>[] coffeeMachinesList) {
+    private LoadBalancer(ActorContext<Mixed> context, TimerScheduler<Mixed> timers, ActorRef<CashRegister.Request> cashRegister,
+                         ActorRef<CoffeeMachine.Request>[] coffeeMachinesList, MachineSelector selector,
+                         int creditBatchSize, Duration creditBatchWindow, boolean forwardToMachine, Admission admission,
+                         ServiceKey<CoffeeMachine.Request> machineKey) {
         super(context);
+        this.forwardToMachine = forwardToMachine;
+        this.admission = admission;
+        this.timers = timers;
+        this.creditBatchSize = Math.max(1, creditBatchSize);
+        this.creditBatchWindow = creditBatchWindow;
+        this.pendingCreditIds = new int[this.creditBatchSize];
         this.cashRegister = cashRegister;
         this.coffeeMachinesList = coffeeMachinesList;
+        this.givenMachines = coffeeMachinesList.length;
+        this.view = new SupplyView(coffeeMachinesList.length);
+        this.selector = selector;
+        this.events = EventSummary.get(context.getSystem());
+        // subscribe to the supply reports of all machines, so no machine has to be polled per coffee
+        for (int i = 0; i < coffeeMachinesList.length; i++) {
+            machineIndex.put(coffeeMachinesList[i], i);
+            coffeeMachinesList[i].tell(new CoffeeMachine.GiveSupply(context.getSelf()));
+        }
+        if (machineKey != null) {
+            ActorRef<Receptionist.Listing> listings = context.messageAdapter(Receptionist.Listing.class,
+                    listing -> new MachinesChanged(listing.getServiceInstances(machineKey)));
+            context.getSystem().receptionist().tell(Receptionist.subscribe(machineKey, listings));
+        }
     }
 
     @Override
@@ -103,23 +436,72 @@ public class LoadBalancer extends AbstractBehavior<LoadBalancer.Mixed> {
         return newReceiveBuilder()
                 .onMessage(CreditSuccess.class, this::onCreditSuccess)
                 .onMessage(CreditFail.class, this::onCreditFail)
+                .onMessage(CreditBatch.class, this::onCreditBatch)
+                .onMessage(FlushCredit.class, command -> onFlushCredit())
                 .onMessage(GetCoffee.class, this::onGetCoffee)
                 .onMessage(GetSupply.class, this::onGetSupply)
-                .onMessage(GotAllSupply.class, this::onGotAllSupply)
+                .onMessage(MachinesChanged.class, this::onMachinesChanged)
+                .onMessage(GetStats.class, this::onGetStats)
                 .build();
     }
 
     /**
      * Needs to be triggered when the customer has enough money for a coffee.
+     * The selector picks the machine from the cached supply view, without asking any machine.
      *
      * @param respond Contains the success when enough credit is available
      * @return this
      */
     private Behavior<Mixed> onCreditSuccess(CreditSuccess respond) {
-        getContext().getLog().info("{} has enough money for coffee", respond.ofWhom);
-        //then the load balancer asks all the coffee machines for their supplies
-        for (ActorRef<CoffeeMachine.Request> coffeeMachine : coffeeMachinesList) {
-            coffeeMachine.tell(new CoffeeMachine.GiveSupply(this.getContext().getSelf(), respond.ofWhom, coffeeMachine));
+        if (log.isDebugEnabled()) {
+            getContext().getLog().debug("Customer {} has enough money for coffee", respond.customerId);
+        }
+        awaitingCredit--;
+        route(respond.ofWhom, respond.customerId, respond.reservation);
+        return this;
+    }
+
+    private void route(ActorRef<Customer.Response> customer, int customerId, long reservation) {
+        int selected = selector.select(view);
+        if (selected < 0) {
+            // every machine is empty, the held credit is given back
+            noMachine++;
+            cashRegister.tell(new CashRegister.ReleaseCredit(customerId, reservation));
+            customer.tell(Customer.GetFail.of(customerId));
+        } else {
+            view.routed[selected]++;
+            routedTotal++;
+            events.record(EventSummary.Event.ROUTED);
+            if (forwardToMachine) {
+                coffeeMachinesList[selected].tell(new CoffeeMachine.GetCoffee(customer, customerId, cashRegister, reservation));
+            } else {
+                customer.tell(new Customer.GetCoffeeMachine(customerId, coffeeMachinesList[selected], reservation));
+            }
+        }
+    }
+
+    /**
+     * Triggers when the cash register checked a batch of customers. Customers with credit are sent to a machine,
+     * the others get the balance fail.
+     *
+     * @param response Contains the ids of the customers of the batch and which of them got their credit
+     * @return this
+     */
+    private Behavior<Mixed> onCreditBatch(CreditBatch response) {
+        awaitingCredit -= response.size();
+        for (int i = 0; i < response.size(); i++) {
+            int customerId = response.customerId(i);
+            ActorRef<Customer.Response> customer = creditCustomers.remove(customerId);
+            if (customer == null) {
+                getContext().getLog().warn("Balance check of customer {} which is not waiting for one", customerId);
+                if (response.granted(i)) {
+                    cashRegister.tell(new CashRegister.ReleaseCredit(customerId, response.reservation(i)));
+                }
+            } else if (response.granted(i)) {
+                route(customer, customerId, response.reservation(i));
+            } else {
+                customer.tell(Customer.BalanceFail.of(customerId));
+            }
         }
         return this;
     }
@@ -131,60 +513,153 @@ public class LoadBalancer extends AbstractBehavior<LoadBalancer.Mixed> {
      * @return this
      */
     private Behavior<Mixed> onCreditFail(CreditFail response) {
+        awaitingCredit--;
         // load balancer forwards the error message to the customer
-        response.ofWhom.tell(new Customer.BalanceFail(response.ofWhom));
+        response.ofWhom.tell(Customer.BalanceFail.of(response.customerId));
         return this;
     }
 
     /**
-     * Customer asks load balancer for a coffee.
+     * Customer asks load balancer for a coffee. Requests beyond what the admission control lets in are turned away
+     * with the time after which the customer may ask again.
      *
      * @param request request
      * @return this
      */
     private Behavior<Mixed> onGetCoffee(GetCoffee request) {
-        getContext().getLog().info("Load balancer got a get coffee request from {}", request.sender.path());
-        // load balancer asks cash register if the customer has enough money for a coffee
-        cashRegister.tell(new CashRegister.State(this.getContext().getSelf(), request.sender));
+        if (log.isDebugEnabled()) {
+            getContext().getLog().debug("Load balancer got a get coffee request from customer {}", request.customerId);
+        }
+        events.record(EventSummary.Event.COFFEE_REQUESTED);
+        requested++;
+        Duration retryAfter = admission.admit(inFlight());
+        if (retryAfter != null) {
+            events.record(EventSummary.Event.SHED);
+            shed++;
+            request.sender.tell(new Customer.Busy(request.customerId, retryAfter));
+            return this;
+        }
+        awaitingCredit++;
+        if (creditBatchSize == 1) {
+            // load balancer asks cash register if the customer has enough money for a coffee
+            cashRegister.tell(new CashRegister.State(this.getContext().getSelf(), request.sender, request.customerId));
+            return this;
+        }
+        pendingCreditIds[pendingCredit++] = request.customerId;
+        creditCustomers.put(request.customerId, request.sender);
+        if (pendingCredit >= creditBatchSize) {
+            timers.cancel(FlushCredit.INSTANCE);
+            flushCredit();
+        } else if (pendingCredit == 1) {
+            if (creditBatchWindow.isZero()) {
+                getContext().getSelf().tell(FlushCredit.INSTANCE);
+            } else {
+                timers.startSingleTimer(FlushCredit.INSTANCE, creditBatchWindow);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * The batch window is over, the pending balance checks are sent.
+     *
+     * @return this
+     */
+    private Behavior<Mixed> onFlushCredit() {
+        if (pendingCredit > 0) {
+            flushCredit();
+        }
         return this;
     }
 
-    //
-    //
+    private void flushCredit() {
+        if (pendingCredit == 1) {
+            int customerId = pendingCreditIds[0];
+            cashRegister.tell(new CashRegister.State(this.getContext().getSelf(), creditCustomers.remove(customerId), customerId));
+        } else {
+            cashRegister.tell(new CashRegister.StateBatch(this.getContext().getSelf(),
+                    Arrays.copyOf(pendingCreditIds, pendingCredit)));
+        }
+        pendingCredit = 0;
+    }
 
     /**
-     * If the load balancer receives all reports from 3 coffee machines,
-     * this will find the coffee machine with the most coffee.
+     * @return the number of admitted requests which are not answered yet
+     */
+    private int inFlight() {
+        return awaitingCredit + (int) Math.max(0, routedTotal - handledTotal);
+    }
+
+    /**
+     * A coffee machine reported its supply; the cached view is updated.
      *
-     * @param response Contains response to check for available supply from machines
+     * @param response Contains the current supply of one machine
      * @return this
      */
     private Behavior<Mixed> onGetSupply(GetSupply response) {
-        count++;
-        if (response.remainingCoffee >= max) {
-            max = response.remainingCoffee;
-            coffeeMachineMax = response.sender;
+        Integer index = machineIndex.get(response.sender);
+        if (index == null) {
+            getContext().getLog().warn("Supply report from unknown machine {}", response.sender.path());
+            return this;
         }
-        if (count == 3) {
-            this.getContext().getSelf().tell(new GotAllSupply(this.getContext().getSelf(), response.ofWhom));
-            count = 0;
+        view.remainingCoffee[index] = response.remainingCoffee;
+        handledTotal += response.handled - view.handled[index];
+        view.handled[index] = response.handled;
+        view.brewRate[index] = response.brewRate;
+        view.refilling[index] = response.refilling;
+        view.queued[index] = response.queued;
+        return this;
+    }
+
+    /**
+     * The receptionist knows a new set of machines. New machines are subscribed to, registered machines which
+     * are gone get no more customers, and their customers no longer count as in flight.
+     *
+     * @param changed Contains every machine currently registered
+     * @return this
+     */
+    private Behavior<Mixed> onMachinesChanged(MachinesChanged changed) {
+        for (ActorRef<CoffeeMachine.Request> machine : changed.machines) {
+            Integer index = machineIndex.get(machine);
+            if (index == null) {
+                index = view.add();
+                coffeeMachinesList = Arrays.copyOf(coffeeMachinesList, index + 1);
+                coffeeMachinesList[index] = machine;
+                machineIndex.put(machine, index);
+                getContext().getLog().info("Coffee machine {} joined", machine.path());
+            } else if (!view.removed[index]) {
+                continue;
+            }
+            view.removed[index] = false;
+            machine.tell(new CoffeeMachine.GiveSupply(getContext().getSelf()));
+        }
+        for (int i = givenMachines; i < coffeeMachinesList.length; i++) {
+            if (!view.removed[i] && !changed.machines.contains(coffeeMachinesList[i])) {
+                getContext().getLog().info("Coffee machine {} left", coffeeMachinesList[i].path());
+                view.removed[i] = true;
+                routedTotal -= view.outstanding(i);
+                view.routed[i] = view.handled[i];
+            }
         }
         return this;
     }
 
     /**
-     * Load balancer returns the coffee machine with the most coffee to the customer.
+     * The query API asks for the state of the load balancer, which is answered from the counters and the supply view
+     * it keeps anyway.
      *
-     * @param response Contains response on all 3 machines for supply info
+     * @param request Contains where the snapshot goes
      * @return this
      */
-    private Behavior<Mixed> onGotAllSupply(GotAllSupply response) {
-        if (max == 0) {
-            response.ofWhom.tell(new Customer.GetFail(response.ofWhom));
-        } else {
-            response.ofWhom.tell(new Customer.GetCoffeeMachine(this.getContext().getSelf(), coffeeMachineMax));
-            max--;
+    private Behavior<Mixed> onGetStats(GetStats request) {
+        int machines = view.size();
+        int[] outstanding = new int[machines];
+        for (int i = 0; i < machines; i++) {
+            outstanding[i] = view.outstanding(i);
         }
+        request.replyTo.tell(new Stats(inFlight(), awaitingCredit, pendingCredit, requested, shed, noMachine,
+                routedTotal, handledTotal, List.of(coffeeMachinesList), view.routed, outstanding,
+                view.remainingCoffee, view.queued, view.refilling, view.removed));
         return this;
     }
-}
\ No newline at end of file
+}
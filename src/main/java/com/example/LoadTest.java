@@ -0,0 +1,128 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.typed.ActorSystem;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigValueFactory;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the shop without a console: the load runs for the warm-up, then for the measurement until its duration
+ * or coffee count is reached, and the system shuts down after writing a JSON summary of the measurement
+ * (settings under {@code coffee.load-test}). The load is the one of the configuration, closed loop with
+ * thinking customers or open loop with arrivals ({@code coffee.arrivals}). The random seed is part of the
+ * summary, so a run can be repeated with {@code -Dcoffee.random-seed}.
+ * <p>
+ * Exits with 0, or with 1 if no coffee was served during the measurement.
+ */
+public final class LoadTest {
+
+    private static final long POLL_MILLIS = 100;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long wallStart = System.nanoTime();
+        Config config = seeded(ConfigFactory.load());
+        long seed = config.getLong("coffee.random-seed");
+        CoffeeSettings settings = CoffeeSettings.fromConfig(config);
+        Config load = config.getConfig("coffee.load-test");
+        Duration warmUp = load.getDuration("warm-up");
+        Duration duration = load.getDuration("duration");
+        long coffees = load.getLong("coffees");
+        String output = load.getString("output");
+        if (duration.isZero() && coffees <= 0) {
+            throw new IllegalArgumentException("coffee.load-test needs a duration or a number of coffees");
+        }
+
+        ActorSystem<CoffeeMain.Command> system = ActorSystem.create(CoffeeMain.create(), "mainCoffeeActor", config);
+        ShopMetrics.Measurement measurement;
+        try {
+            system.tell(new CoffeeMain.StartMessage());
+            ShopMetrics metrics = ShopMetrics.get(system);
+            Thread.sleep(warmUp.toMillis());
+            metrics.startMeasurement();
+            long deadline = System.nanoTime() + duration.toNanos();
+            while ((duration.isZero() || System.nanoTime() - deadline < 0)
+                    && (coffees <= 0 || metrics.measuredCoffees() < coffees)) {
+                Thread.sleep(POLL_MILLIS);
+            }
+            measurement = metrics.stopMeasurement();
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().join();
+        }
+
+        write(summary(settings, seed, "real", warmUp, measurement, System.nanoTime() - wallStart), output);
+        System.exit(measurement.coffees > 0 ? 0 : 1);
+    }
+
+    /**
+     * @return the configuration with a new random seed in place of 0, so the seed of the run can be reported
+     */
+    static Config seeded(Config config) {
+        if (config.getLong("coffee.random-seed") != 0) {
+            return config;
+        }
+        return config.withValue("coffee.random-seed", ConfigValueFactory.fromAnyRef(new SplittableRandom().nextLong()));
+    }
+
+    /**
+     * Prints the summary, or writes it to the output file if there is one.
+     */
+    static void write(String summary, String output) throws IOException {
+        if (output.isEmpty()) {
+            System.out.println(summary);
+        } else {
+            Files.write(Paths.get(output), (summary + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * @param clock     real or simulated, the clock of the warm-up, the measurement and the latencies
+     * @param wallNanos how long the whole run took on the wall clock
+     * @return the measurement as one line of JSON; rates are per answered coffee request, which is served, failed
+     * or turned away busy
+     */
+    static String summary(CoffeeSettings settings, long seed, String clock, Duration warmUp, ShopMetrics.Measurement measurement,
+                          long wallNanos) {
+        double seconds = measurement.nanos / (double) TimeUnit.SECONDS.toNanos(1);
+        long answered = measurement.coffees + measurement.getFails + measurement.balanceFails + measurement.busy;
+        Histogram latency = measurement.latencyNanos;
+        return String.format(Locale.ROOT, "{\"seed\":%d,\"clock\":\"%s\",\"wallSeconds\":%.3f,"
+                        + "\"arrivals\":\"%s\",\"arrivalRate\":%s,\"customers\":%d,\"machines\":%d,"
+                        + "\"warmUpSeconds\":%.3f,\"measuredSeconds\":%.3f,\"coffees\":%d,\"throughputPerSecond\":%.2f,"
+                        + "\"latencyMillis\":{\"mean\":%.3f,\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"p999\":%.3f,\"max\":%.3f},"
+                        + "\"getFails\":%d,\"balanceFails\":%d,\"busy\":%d,\"droppedArrivals\":%d,\"getFailRate\":%.4f,\"balanceFailRate\":%.4f,\"busyRate\":%.4f}",
+                seed, clock, wallNanos / 1e9,
+                settings.arrivals, settings.openLoop() ? String.format(Locale.ROOT, "%.2f", settings.arrivalRate) : "null",
+                settings.customers, settings.machines, warmUp.toNanos() / 1e9, seconds,
+                measurement.coffees, measurement.coffees / seconds,
+                latency.getMean() / 1e6, millis(latency, 50.0), millis(latency, 90.0), millis(latency, 99.0),
+                millis(latency, 99.9), millis(latency, 100.0),
+                measurement.getFails, measurement.balanceFails, measurement.busy, measurement.droppedArrivals,
+                rate(measurement.getFails, answered), rate(measurement.balanceFails, answered),
+                rate(measurement.busy, answered));
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static double rate(long count, long total) {
+        return total == 0 ? 0 : count / (double) total;
+    }
+}
@@ -0,0 +1,219 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import java.util.Random;
+
+/**
+ * Strategy the load balancer uses to pick the coffee machine for a customer.
+ * A selector belongs to one load balancer and may keep state between calls.
+ */
+public interface MachineSelector {
+
+    /**
+     * Read-only view of the machines as the load balancer currently sees them.
+     */
+    interface View {
+        /**
+         * @return the number of machines
+         */
+        int size();
+
+        /**
+         * @return the coffee the machine has left for customers not yet sent there
+         */
+        int available(int machine);
+
+        /**
+         * @return the customers sent to the machine which it has not served yet
+         */
+        int outstanding(int machine);
+
+        /**
+         * @return the requests waiting at the machine for their brew cycle, as of its last supply report
+         */
+        int queued(int machine);
+
+        /**
+         * @return how many cups per second the machine brews
+         */
+        double brewRate(int machine);
+    }
+
+    /**
+     * @return the index of the selected machine, or -1 if no machine has coffee left
+     */
+    int select(View view);
+
+    /**
+     * Picks the machine with the most coffee left.
+     */
+    static MachineSelector maxRemaining() {
+        return new MaxRemaining();
+    }
+
+    /**
+     * Walks through the machines in turn, skipping empty ones.
+     */
+    static MachineSelector roundRobin() {
+        return new RoundRobin();
+    }
+
+    /**
+     * Picks the machine with the fewest customers on their way to it.
+     */
+    static MachineSelector leastOutstanding() {
+        return new LeastOutstanding();
+    }
+
+    /**
+     * Samples two machines at random and takes the one with fewer outstanding customers.
+     */
+    static MachineSelector powerOfTwoChoices(Random random) {
+        return new PowerOfTwoChoices(random);
+    }
+
+    /**
+     * Spreads customers in proportion to the brew speed of the machines (smooth weighted round-robin).
+     */
+    static MachineSelector weightedByBrewSpeed() {
+        return new WeightedByBrewSpeed();
+    }
+
+    /**
+     * @return the selector with the given name, as used in the configuration
+     */
+    static MachineSelector byName(String name, Random random) {
+        switch (name) {
+            case "max-remaining":
+                return maxRemaining();
+            case "round-robin":
+                return roundRobin();
+            case "least-outstanding":
+                return leastOutstanding();
+            case "power-of-two-choices":
+                return powerOfTwoChoices(random);
+            case "weighted-by-brew-speed":
+                return weightedByBrewSpeed();
+            default:
+                throw new IllegalArgumentException("Unknown machine selector: " + name);
+        }
+    }
+
+    final class MaxRemaining implements MachineSelector {
+        @Override
+        public int select(View view) {
+            int selected = -1;
+            int max = 0;
+            for (int i = 0; i < view.size(); i++) {
+                int available = view.available(i);
+                if (available > 0 && available >= max) {
+                    max = available;
+                    selected = i;
+                }
+            }
+            return selected;
+        }
+    }
+
+    final class RoundRobin implements MachineSelector {
+        private int next = 0;
+
+        @Override
+        public int select(View view) {
+            int size = view.size();
+            for (int n = 0; n < size; n++) {
+                int i = (next + n) % size;
+                if (view.available(i) > 0) {
+                    next = (i + 1) % size;
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    final class LeastOutstanding implements MachineSelector {
+        @Override
+        public int select(View view) {
+            int selected = -1;
+            for (int i = 0; i < view.size(); i++) {
+                if (view.available(i) > 0 && (selected < 0 || better(view, i, selected))) {
+                    selected = i;
+                }
+            }
+            return selected;
+        }
+
+        // fewer outstanding customers wins, more coffee breaks ties
+        static boolean better(View view, int a, int b) {
+            int outstandingA = view.outstanding(a);
+            int outstandingB = view.outstanding(b);
+            return outstandingA < outstandingB
+                    || (outstandingA == outstandingB && view.available(a) > view.available(b));
+        }
+    }
+
+    final class PowerOfTwoChoices implements MachineSelector {
+        private final Random random;
+
+        PowerOfTwoChoices(Random random) {
+            this.random = random;
+        }
+
+        @Override
+        public int select(View view) {
+            int size = view.size();
+            if (size == 0) {
+                return -1;
+            }
+            int a = random.nextInt(size);
+            int b = size == 1 ? a : (a + 1 + random.nextInt(size - 1)) % size;
+            boolean aOk = view.available(a) > 0;
+            boolean bOk = view.available(b) > 0;
+            if (aOk && bOk) {
+                return LeastOutstanding.better(view, b, a) ? b : a;
+            }
+            if (aOk || bOk) {
+                return aOk ? a : b;
+            }
+            // both samples are empty, so look for any machine that still has coffee
+            for (int n = 1; n < size; n++) {
+                int i = (a + n) % size;
+                if (view.available(i) > 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    final class WeightedByBrewSpeed implements MachineSelector {
+        private double[] current = new double[0];
+
+        @Override
+        public int select(View view) {
+            int size = view.size();
+            if (current.length != size) {
+                current = new double[size];
+            }
+            int selected = -1;
+            double total = 0;
+            for (int i = 0; i < size; i++) {
+                if (view.available(i) > 0) {
+                    double weight = view.brewRate(i);
+                    current[i] += weight;
+                    total += weight;
+                    if (selected < 0 || current[i] > current[selected]) {
+                        selected = i;
+                    }
+                }
+            }
+            if (selected >= 0) {
+                current[selected] -= total;
+            }
+            return selected;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.japi.function.Function;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * HTTP endpoint for live snapshots of the running shop (settings under {@code coffee.query}), on the JDK's built-in
+ * server. Every query asks the actors for what they keep anyway, so a snapshot costs a few messages and no scan
+ * of the customers:
+ * <ul>
+ *     <li>{@code GET /cash-register?top=N}: total balance, customers, held credits and the N highest balances,
+ *     merged over the cash register shards</li>
+ *     <li>{@code GET /machines}: supply, queue and refill state asked from every machine, next to what the load
+ *     balancer routed to it</li>
+ *     <li>{@code GET /load-balancer}: requests in flight, shed and routed, and the machine selector</li>
+ * </ul>
+ * Answers are JSON, or 503 if the actors don't answer within the query timeout. The handlers don't wait for the
+ * actors, they answer when the asks complete.
+ */
+public final class QueryServer implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(QueryServer.class);
+
+    private final HttpServer server;
+    private final ActorSystem<?> system;
+    private final CoffeeSettings settings;
+    private final ActorRef<CashRegister.Request> cashRegister;
+    private final ActorRef<LoadBalancer.Mixed> loadBalancer;
+
+    private QueryServer(HttpServer server, ActorSystem<?> system, CoffeeSettings settings,
+                        ActorRef<CashRegister.Request> cashRegister, ActorRef<LoadBalancer.Mixed> loadBalancer) {
+        this.server = server;
+        this.system = system;
+        this.settings = settings;
+        this.cashRegister = cashRegister;
+        this.loadBalancer = loadBalancer;
+    }
+
+    /**
+     * Binds the endpoint at {@code coffee.query.host} and {@code port} and starts serving queries.
+     *
+     * @throws IOException if the address cannot be bound
+     */
+    public static QueryServer start(ActorSystem<?> system, CoffeeSettings settings,
+                                    ActorRef<CashRegister.Request> cashRegister, ActorRef<LoadBalancer.Mixed> loadBalancer)
+            throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(settings.queryHost, settings.queryPort), 0);
+        QueryServer query = new QueryServer(server, system, settings, cashRegister, loadBalancer);
+        server.createContext("/cash-register", query::cashRegister);
+        server.createContext("/machines", query::machines);
+        server.createContext("/load-balancer", query::loadBalancer);
+        server.start();
+        log.info("Query API listening on http://{}:{}/", settings.queryHost, server.getAddress().getPort());
+        return query;
+    }
+
+    private void cashRegister(HttpExchange exchange) {
+        int top = Math.min(settings.queryMaxTop, intParameter(exchange, "top", 10));
+        CompletionStage<CashRegister.Totals> totals = ask(cashRegister, replyTo -> new CashRegister.GetTotals(replyTo, top));
+        answer(exchange, totals.thenApply(QueryServer::totalsJson));
+    }
+
+    private void loadBalancer(HttpExchange exchange) {
+        answer(exchange, ask(loadBalancer, LoadBalancer.GetStats::new).thenApply(this::loadBalancerJson));
+    }
+
+    /**
+     * Asks the load balancer for the machines it knows and then every machine at once. A machine which doesn't
+     * answer in time is shown with the supply it last reported to the load balancer.
+     */
+    private void machines(HttpExchange exchange) {
+        answer(exchange, ask(loadBalancer, LoadBalancer.GetStats::new).thenCompose(stats -> {
+            @SuppressWarnings("unchecked")
+            CompletableFuture<LoadBalancer.GetSupply>[] reports = new CompletableFuture[stats.machines.size()];
+            for (int i = 0; i < reports.length; i++) {
+                reports[i] = stats.removed(i) ? CompletableFuture.completedFuture(null)
+                        : ask(stats.machines.get(i), CoffeeMachine.GetStatus::new).toCompletableFuture()
+                        .exceptionally(e -> null);
+            }
+            return CompletableFuture.allOf(reports).thenApply(done -> machinesJson(stats, reports));
+        }));
+    }
+
+    private <Q, R> CompletionStage<R> ask(ActorRef<Q> target, Function<ActorRef<R>, Q> request) {
+        return AskPattern.ask(target, request, settings.queryTimeout, system.scheduler());
+    }
+
+    private static String totalsJson(CashRegister.Totals totals) {
+        StringBuilder json = new StringBuilder(64 + totals.topSize() * 32);
+        json.append(String.format(Locale.ROOT, "{\"totalBalance\":%d,\"customers\":%d,\"heldCredits\":%d,\"shards\":%d,\"top\":[",
+                totals.totalBalance, totals.customers, totals.heldCredits, totals.shards));
+        for (int i = 0; i < totals.topSize(); i++) {
+            json.append(i == 0 ? "" : ",").append(String.format(Locale.ROOT, "{\"customer\":%d,\"balance\":%d}",
+                    totals.topCustomer(i), totals.topBalance(i)));
+        }
+        return json.append("]}").toString();
+    }
+
+    private String loadBalancerJson(LoadBalancer.Stats stats) {
+        StringBuilder json = new StringBuilder(256);
+        json.append(String.format(Locale.ROOT, "{\"selector\":%s,\"inFlight\":%d,\"awaitingCredit\":%d,\"pendingCredit\":%d,"
+                        + "\"requested\":%d,\"shed\":%d,\"noMachine\":%d,\"routed\":%d,\"handled\":%d,\"machines\":[",
+                quote(settings.machineSelector), stats.inFlight, stats.awaitingCredit, stats.pendingCredit,
+                stats.requested, stats.shed, stats.noMachine, stats.routed, stats.handled));
+        for (int i = 0; i < stats.machines.size(); i++) {
+            json.append(i == 0 ? "" : ",").append(String.format(Locale.ROOT, "{\"machine\":%s,\"routed\":%d,\"outstanding\":%d,\"removed\":%b}",
+                    quote(stats.machines.get(i).path().toString()), stats.routedTo(i), stats.outstanding(i), stats.removed(i)));
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String machinesJson(LoadBalancer.Stats stats, CompletableFuture<LoadBalancer.GetSupply>[] reports) {
+        StringBuilder json = new StringBuilder(64 + reports.length * 192);
+        json.append("{\"machines\":[");
+        for (int i = 0; i < reports.length; i++) {
+            LoadBalancer.GetSupply report = reports[i].join();
+            boolean live = report != null;
+            json.append(i == 0 ? "" : ",").append(String.format(Locale.ROOT,
+                    "{\"machine\":%s,\"live\":%b,\"remainingCoffee\":%d,\"queued\":%d,\"refilling\":%b,\"handled\":%s,"
+                            + "\"brewRate\":%s,\"routed\":%d,\"outstanding\":%d,\"removed\":%b}",
+                    quote(stats.machines.get(i).path().toString()), live,
+                    live ? report.remainingCoffee : stats.remainingCoffee(i), live ? report.queued : stats.queued(i),
+                    live ? report.refilling : stats.refilling(i), live ? Long.toString(report.handled) : "null",
+                    live ? String.format(Locale.ROOT, "%.3f", report.brewRate) : "null",
+                    stats.routedTo(i), stats.outstanding(i), stats.removed(i)));
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Sends the JSON once it is there, 503 if the actors didn't answer in time and 500 for anything else.
+     */
+    private static void answer(HttpExchange exchange, CompletionStage<String> json) {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            send(exchange, 405, "{\"error\":\"only GET is supported\"}");
+            return;
+        }
+        json.whenComplete((body, failure) -> {
+            if (failure == null) {
+                send(exchange, 200, body);
+            } else if (cause(failure) instanceof TimeoutException) {
+                send(exchange, 503, "{\"error\":\"the shop did not answer in time\"}");
+            } else {
+                log.warn("Query {} failed", exchange.getRequestURI(), failure);
+                send(exchange, 500, "{\"error\":" + quote(String.valueOf(cause(failure))) + "}");
+            }
+        });
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            log.debug("Could not answer query {}", exchange.getRequestURI(), e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Throwable cause(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+
+    /**
+     * @return the value of the query parameter, or the default if it is missing or not a number
+     */
+    private static int intParameter(HttpExchange exchange, String name, int defaultValue) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return defaultValue;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                try {
+                    return Math.max(0, Integer.parseInt(parameter.substring(name.length() + 1)));
+                } catch (NumberFormatException e) {
+                    return defaultValue;
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    /**
+     * Stops accepting queries; queries which are being answered get a second to finish.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+    }
+}
@@ -0,0 +1,164 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Refills the coffee machines. It subscribes to the supply reports of every machine like a load balancer
+ * does, and once a machine is down to the low-water mark it is queued for a refill. At most
+ * {@code parallelRefills} machines are refilled at a time and every refill takes {@code refillLatency},
+ * so the refill capacity is {@code parallelRefills * capacity / refillLatency} cups over time.
+ * A machine tells its load balancers while it is being refilled, so they send customers elsewhere.
+ */
+public class Replenisher extends AbstractBehavior<Replenisher.Command> {
+    // for the level check, see LoadBalancer
+    private static final Logger log = LoggerFactory.getLogger(Replenisher.class);
+
+    private final ActorRef<CoffeeMachine.Request>[] machines;
+    private final Map<ActorRef<CoffeeMachine.Request>, Integer> machineIndex = new HashMap<>();
+    private final TimerScheduler<Command> timers;
+    private final EventSummary events;
+    private final int lowWaterMark;
+    private final int capacity;
+    private final Duration refillLatency;
+    private final int parallelRefills;
+
+    // where each machine is in the refill cycle
+    private final boolean[] queued;
+    private final boolean[] refilling;
+    private final Queue<Integer> waiting = new ArrayDeque<>();
+    private int running;
+
+    public interface Command {
+    }
+
+    /**
+     * Is triggered when a machine reports its supply, through the adapter of the load balancer protocol.
+     */
+    private static final class WrappedSupply implements Command {
+        private final LoadBalancer.Mixed report;
+
+        private WrappedSupply(LoadBalancer.Mixed report) {
+            this.report = report;
+        }
+    }
+
+    /**
+     * Is triggered by the timer when the refill of a machine is done.
+     */
+    private static final class RefillDone implements Command {
+        private final int machine;
+
+        private RefillDone(int machine) {
+            this.machine = machine;
+        }
+    }
+
+    /**
+     * @param lowWaterMark    a machine with this many cups or fewer is refilled
+     * @param capacity        the number of cups a refilled machine has
+     * @param refillLatency   how long one refill takes
+     * @param parallelRefills how many machines can be refilled at the same time
+     */
+    public static Behavior<Command> create(ActorRef<CoffeeMachine.Request>[] machines, int lowWaterMark, int capacity,
+                                           Duration refillLatency, int parallelRefills) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new Replenisher(context, timers, machines, lowWaterMark, capacity, refillLatency, parallelRefills)));
+    }
+
+    private Replenisher(ActorContext<Command> context, TimerScheduler<Command> timers, ActorRef<CoffeeMachine.Request>[] machines,
+                        int lowWaterMark, int capacity, Duration refillLatency, int parallelRefills) {
+        super(context);
+        this.timers = timers;
+        this.machines = machines;
+        this.lowWaterMark = lowWaterMark;
+        this.capacity = capacity;
+        this.refillLatency = refillLatency;
+        this.parallelRefills = Math.max(1, parallelRefills);
+        this.events = EventSummary.get(context.getSystem());
+        queued = new boolean[machines.length];
+        refilling = new boolean[machines.length];
+        ActorRef<LoadBalancer.Mixed> supplyReports = context.messageAdapter(LoadBalancer.Mixed.class, WrappedSupply::new);
+        for (int i = 0; i < machines.length; i++) {
+            machineIndex.put(machines[i], i);
+            machines[i].tell(new CoffeeMachine.GiveSupply(supplyReports));
+        }
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(WrappedSupply.class, this::onSupply)
+                .onMessage(RefillDone.class, this::onRefillDone)
+                .build();
+    }
+
+    /**
+     * A machine reported its supply; a machine down to the low-water mark is queued for a refill.
+     *
+     * @param wrapped Contains the supply report of one machine
+     * @return this
+     */
+    private Behavior<Command> onSupply(WrappedSupply wrapped) {
+        if (!(wrapped.report instanceof LoadBalancer.GetSupply)) {
+            return this;
+        }
+        LoadBalancer.GetSupply report = (LoadBalancer.GetSupply) wrapped.report;
+        Integer index = machineIndex.get(report.sender);
+        if (index == null) {
+            getContext().getLog().warn("Supply report from unknown machine {}", report.sender.path());
+            return this;
+        }
+        if (report.remainingCoffee <= lowWaterMark && !queued[index] && !refilling[index]) {
+            queued[index] = true;
+            waiting.add(index);
+            startRefills();
+        }
+        return this;
+    }
+
+    /**
+     * The refill of a machine is done; the machine is filled up and the next waiting machine is refilled.
+     *
+     * @param done Contains the refilled machine
+     * @return this
+     */
+    private Behavior<Command> onRefillDone(RefillDone done) {
+        refilling[done.machine] = false;
+        running--;
+        events.record(EventSummary.Event.REFILLED);
+        machines[done.machine].tell(new CoffeeMachine.Refill(capacity));
+        if (log.isDebugEnabled()) {
+            getContext().getLog().debug("{} refilled to {} cups", machines[done.machine].path(), capacity);
+        }
+        startRefills();
+        return this;
+    }
+
+    private void startRefills() {
+        while (running < parallelRefills && !waiting.isEmpty()) {
+            int machine = waiting.poll();
+            queued[machine] = false;
+            refilling[machine] = true;
+            running++;
+            machines[machine].tell(CoffeeMachine.StartRefill.INSTANCE);
+            timers.startSingleTimer(machine, new RefillDone(machine), refillLatency);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.actor.typed.Props;
+import com.typesafe.config.Config;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Selects the dispatcher of every actor role, so the cash register and the load balancer don't compete
+ * with thousands of customers for the same threads. The dispatcher of a role is the config path given
+ * under {@code coffee.dispatchers.role}; an empty path or {@code coffee.dispatchers.enabled = off} keeps
+ * the role on the default dispatcher.
+ */
+public final class RoleDispatchers implements Extension {
+
+    public static final ExtensionId<RoleDispatchers> ID = new ExtensionId<RoleDispatchers>() {
+        @Override
+        public RoleDispatchers createExtension(ActorSystem<?> system) {
+            return new RoleDispatchers(system.settings().config().getConfig("coffee.dispatchers"));
+        }
+    };
+
+    // dispatcher config path per role, roles without an entry use the default dispatcher
+    private final Map<ShopMetrics.Role, String> paths = new EnumMap<>(ShopMetrics.Role.class);
+
+    public static RoleDispatchers get(ActorSystem<?> system) {
+        return system.registerExtension(ID);
+    }
+
+    private RoleDispatchers(Config config) {
+        if (!config.getBoolean("enabled")) {
+            return;
+        }
+        for (ShopMetrics.Role role : ShopMetrics.Role.values()) {
+            String path = config.hasPath("role." + role.configName) ? config.getString("role." + role.configName) : "";
+            if (!path.isEmpty()) {
+                paths.put(role, path);
+            }
+        }
+    }
+
+    /**
+     * @param props the props of the actor, e.g. its mailbox
+     * @return the props with the dispatcher of the role added
+     */
+    public Props props(ShopMetrics.Role role, Props props) {
+        String path = paths.get(role);
+        return path == null ? props : props.withDispatcherFromConfig(path);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.actor.typed.javadsl.Adapter;
+
+/**
+ * The clock of the shop, one instance per actor system: {@link System#nanoTime()}, or the virtual time of the
+ * {@link SimulatedScheduler} in a simulation. Latencies, arrivals and admission tokens are measured with it,
+ * so they are in simulated time when the shop is simulated.
+ */
+public final class ShopClock implements Extension {
+
+    public static final ExtensionId<ShopClock> ID = new ExtensionId<ShopClock>() {
+        @Override
+        public ShopClock createExtension(ActorSystem<?> system) {
+            return new ShopClock(system);
+        }
+    };
+
+    // null if the shop runs in real time
+    private final SimulatedScheduler simulated;
+
+    public static ShopClock get(ActorSystem<?> system) {
+        return system.registerExtension(ID);
+    }
+
+    private ShopClock(ActorSystem<?> system) {
+        akka.actor.Scheduler scheduler = Adapter.toClassic(system).scheduler();
+        simulated = scheduler instanceof SimulatedScheduler ? (SimulatedScheduler) scheduler : null;
+    }
+
+    /**
+     * @return the current time in nanoseconds, only meaningful as the difference to another value of this clock
+     */
+    public long nanoTime() {
+        return simulated != null ? simulated.nanoTime() : System.nanoTime();
+    }
+
+    /**
+     * @return the scheduler of the simulation, or null if the shop runs in real time
+     */
+    public SimulatedScheduler simulation() {
+        return simulated;
+    }
+}
@@ -0,0 +1,326 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.BehaviorInterceptor;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.actor.typed.MailboxSelector;
+import akka.actor.typed.Props;
+import akka.actor.typed.TypedActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import com.typesafe.config.Config;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and throughput metrics of the shop, one instance per actor system.
+ * For every actor role it records the message processing time and the mailbox depth,
+ * and for the whole shop the end-to-end coffee latency from {@code LoadBalancer.GetCoffee}
+ * to {@code Customer.GetSuccess}. All values go into HdrHistogram recorders, which actors
+ * write to without locking; a periodic snapshot goes to the log or to a file.
+ */
+public final class ShopMetrics implements Extension {
+
+    private static final Logger log = LoggerFactory.getLogger(ShopMetrics.class);
+
+    public enum Role {
+        CASH_REGISTER_ROUTER("cash-register-router"),
+        CASH_REGISTER("cash-register"),
+        LOAD_BALANCER("load-balancer"),
+        COFFEE_MACHINE("coffee-machine"),
+        CUSTOMER("customer");
+
+        public final String configName;
+
+        Role(String configName) {
+            this.configName = configName;
+        }
+
+        static Role fromConfigName(String name) {
+            for (Role role : values()) {
+                if (role.configName.equals(name)) {
+                    return role;
+                }
+            }
+            throw new IllegalArgumentException("Unknown actor role: " + name);
+        }
+    }
+
+    public static final ExtensionId<ShopMetrics> ID = new ExtensionId<ShopMetrics>() {
+        @Override
+        public ShopMetrics createExtension(ActorSystem<?> system) {
+            return new ShopMetrics(system);
+        }
+    };
+
+    /**
+     * Metrics of all actors of one role.
+     */
+    static final class RoleMetrics {
+        final Recorder processingNanos = new Recorder(3);
+        final Recorder mailboxDepth = new Recorder(3);
+        private Histogram processingInterval;
+        private Histogram mailboxInterval;
+    }
+
+    private final boolean enabled;
+    private final Map<Role, RoleMetrics> roles = new EnumMap<>(Role.class);
+    private final Recorder coffeeLatencyNanos = new Recorder(3);
+    private Histogram coffeeLatencyInterval;
+    private final LongAdder coffees = new LongAdder();
+    private final LongAdder getFails = new LongAdder();
+    private final LongAdder balanceFails = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder droppedArrivals = new LongAdder();
+    // the coffee latencies of a running measurement, null if there is none
+    private volatile Recorder measuredLatencyNanos;
+    private Measurement measurementStart;
+    private final Path snapshotFile;
+    private final ShopClock clock;
+
+    public static ShopMetrics get(ActorSystem<?> system) {
+        return system.registerExtension(ID);
+    }
+
+    private ShopMetrics(ActorSystem<?> system) {
+        Config config = system.settings().config().getConfig("coffee.metrics");
+        enabled = config.getBoolean("enabled");
+        String file = config.getString("snapshot-file");
+        snapshotFile = file.isEmpty() ? null : Paths.get(file);
+        clock = ShopClock.get(system);
+        for (Role role : Role.values()) {
+            roles.put(role, new RoleMetrics());
+        }
+        Duration interval = config.getDuration("snapshot-interval");
+        if (enabled && !interval.isZero()) {
+            system.scheduler().scheduleAtFixedRate(interval, interval, this::writeSnapshot, system.executionContext());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Wraps the behavior so the processing time of every message is recorded for the role.
+     */
+    public <T> Behavior<T> instrument(Role role, Behavior<T> behavior) {
+        if (!enabled) {
+            return behavior;
+        }
+        RoleMetrics metrics = roles.get(role);
+        return Behaviors.intercept(() -> new ProcessingTimer<>(metrics), behavior);
+    }
+
+    /**
+     * @return the props which select the instrumented mailbox of the role, so its depth is recorded
+     */
+    public Props props(Role role) {
+        return enabled ? MailboxSelector.fromConfig("coffee.metrics.mailbox." + role.configName) : Props.empty();
+    }
+
+    void recordMailboxDepth(Role role, int depth) {
+        roles.get(role).mailboxDepth.recordValue(depth);
+    }
+
+    /**
+     * Records one served coffee and how long it took since the customer asked the load balancer.
+     */
+    public void recordCoffee(long latencyNanos) {
+        coffees.increment();
+        if (enabled) {
+            coffeeLatencyNanos.recordValue(Math.max(0, latencyNanos));
+        }
+        Recorder measured = measuredLatencyNanos;
+        if (measured != null) {
+            measured.recordValue(Math.max(0, latencyNanos));
+        }
+    }
+
+    public void recordGetFail() {
+        getFails.increment();
+    }
+
+    public void recordBalanceFail() {
+        balanceFails.increment();
+    }
+
+    /**
+     * @return the coffees served since the start of the actor system
+     */
+    public long coffees() {
+        return coffees.sum();
+    }
+
+    /**
+     * Records a coffee request the load balancer turned away.
+     */
+    public void recordBusy() {
+        busy.increment();
+    }
+
+    /**
+     * Records an arrival of the open-loop load which a customer dropped because too many were waiting.
+     */
+    public void recordDroppedArrival() {
+        droppedArrivals.increment();
+    }
+
+    /**
+     * The counts of a measurement and its coffee latencies, which are recorded whether the metrics are enabled or not.
+     * Times are in {@link ShopClock} time, so simulated in a simulation.
+     */
+    public static final class Measurement {
+        public final long startNanos;
+        public final long nanos;
+        public final long coffees;
+        public final long getFails;
+        public final long balanceFails;
+        public final long busy;
+        public final long droppedArrivals;
+        /** null at the start of a measurement */
+        public final Histogram latencyNanos;
+
+        private Measurement(long startNanos, long nanos, long coffees, long getFails, long balanceFails, long busy,
+                            long droppedArrivals, Histogram latencyNanos) {
+            this.startNanos = startNanos;
+            this.nanos = nanos;
+            this.coffees = coffees;
+            this.getFails = getFails;
+            this.balanceFails = balanceFails;
+            this.busy = busy;
+            this.droppedArrivals = droppedArrivals;
+            this.latencyNanos = latencyNanos;
+        }
+    }
+
+    /**
+     * Starts a measurement; what happens until {@link #stopMeasurement()} is counted apart from the snapshots.
+     */
+    public synchronized void startMeasurement() {
+        measuredLatencyNanos = new Recorder(3);
+        measurementStart = new Measurement(clock.nanoTime(), 0, coffees.sum(), getFails.sum(), balanceFails.sum(),
+                busy.sum(), droppedArrivals.sum(), null);
+    }
+
+    /**
+     * @return the coffees served since {@link #startMeasurement()}
+     */
+    public synchronized long measuredCoffees() {
+        return measurementStart == null ? 0 : coffees.sum() - measurementStart.coffees;
+    }
+
+    /**
+     * Ends the measurement.
+     *
+     * @return what happened since {@link #startMeasurement()}
+     */
+    public synchronized Measurement stopMeasurement() {
+        if (measurementStart == null) {
+            throw new IllegalStateException("No measurement started");
+        }
+        Measurement start = measurementStart;
+        Histogram latencies = measuredLatencyNanos.getIntervalHistogram();
+        measuredLatencyNanos = null;
+        measurementStart = null;
+        return new Measurement(start.startNanos, clock.nanoTime() - start.startNanos, coffees.sum() - start.coffees,
+                getFails.sum() - start.getFails, balanceFails.sum() - start.balanceFails, busy.sum() - start.busy,
+                droppedArrivals.sum() - start.droppedArrivals, latencies);
+    }
+
+    /**
+     * Times the message handling of the wrapped behavior.
+     */
+    private static final class ProcessingTimer<T> extends BehaviorInterceptor<T, T> {
+        private final RoleMetrics metrics;
+
+        @SuppressWarnings("unchecked")
+        ProcessingTimer(RoleMetrics metrics) {
+            super((Class<T>) (Class<?>) Object.class);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Behavior<T> aroundReceive(TypedActorContext<T> ctx, T msg, ReceiveTarget<T> target) {
+            long start = System.nanoTime();
+            try {
+                return target.apply(ctx, msg);
+            } finally {
+                metrics.processingNanos.recordValue(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public boolean isSame(BehaviorInterceptor<Object, Object> other) {
+            return other instanceof ProcessingTimer && ((ProcessingTimer<?>) other).metrics == metrics;
+        }
+    }
+
+    /**
+     * @return the metrics since the previous snapshot, one line per role
+     */
+    public synchronized String snapshot() {
+        StringBuilder out = new StringBuilder();
+        out.append("metrics snapshot ").append(Instant.now()).append('\n');
+        for (Map.Entry<Role, RoleMetrics> entry : roles.entrySet()) {
+            RoleMetrics metrics = entry.getValue();
+            metrics.processingInterval = metrics.processingNanos.getIntervalHistogram(metrics.processingInterval);
+            metrics.mailboxInterval = metrics.mailboxDepth.getIntervalHistogram(metrics.mailboxInterval);
+            out.append(String.format("  %-20s messages=%d processing[us] p50=%.1f p99=%.1f p999=%.1f max=%.1f"
+                            + " mailbox p50=%d p99=%d max=%d%n",
+                    entry.getKey().configName, metrics.processingInterval.getTotalCount(),
+                    micros(metrics.processingInterval, 50.0), micros(metrics.processingInterval, 99.0),
+                    micros(metrics.processingInterval, 99.9), micros(metrics.processingInterval, 100.0),
+                    metrics.mailboxInterval.getValueAtPercentile(50.0), metrics.mailboxInterval.getValueAtPercentile(99.0),
+                    metrics.mailboxInterval.getMaxValue()));
+        }
+        coffeeLatencyInterval = coffeeLatencyNanos.getIntervalHistogram(coffeeLatencyInterval);
+        out.append(String.format("  %-20s coffees=%d latency[us] p50=%.1f p99=%.1f p999=%.1f max=%.1f"
+                        + " total coffees=%d get fails=%d balance fails=%d busy=%d dropped arrivals=%d%n",
+                "end-to-end", coffeeLatencyInterval.getTotalCount(),
+                micros(coffeeLatencyInterval, 50.0), micros(coffeeLatencyInterval, 99.0),
+                micros(coffeeLatencyInterval, 99.9), micros(coffeeLatencyInterval, 100.0),
+                coffees.sum(), getFails.sum(), balanceFails.sum(), busy.sum(), droppedArrivals.sum()));
+        Runtime runtime = Runtime.getRuntime();
+        out.append(String.format("  %-20s used=%d MB committed=%d MB max=%d MB%n", "heap",
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20, runtime.totalMemory() >> 20, runtime.maxMemory() >> 20));
+        return out.toString();
+    }
+
+    private static double micros(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    private void writeSnapshot() {
+        String snapshot = snapshot();
+        if (snapshotFile == null) {
+            log.info(snapshot);
+            return;
+        }
+        try {
+            Files.write(snapshotFile, snapshot.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.warn("Could not write metrics snapshot to {}", snapshotFile, e);
+        }
+    }
+}
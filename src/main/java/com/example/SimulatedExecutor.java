@@ -0,0 +1,71 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.dispatch.DispatcherPrerequisites;
+import akka.dispatch.ExecutorServiceConfigurator;
+import akka.dispatch.ExecutorServiceFactory;
+import com.typesafe.config.Config;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor of a dispatcher in a simulation, selected with {@code executor = "com.example.SimulatedExecutor"}:
+ * the mailboxes run on the one thread of the {@link SimulatedScheduler}, in the order they were submitted.
+ */
+public final class SimulatedExecutor extends ExecutorServiceConfigurator {
+
+    private final SimulatedScheduler scheduler;
+
+    public SimulatedExecutor(Config config, DispatcherPrerequisites prerequisites) {
+        super(config, prerequisites);
+        if (!(prerequisites.scheduler() instanceof SimulatedScheduler)) {
+            throw new IllegalStateException("The simulated executor needs akka.scheduler.implementation = \""
+                    + SimulatedScheduler.class.getName() + "\"");
+        }
+        this.scheduler = (SimulatedScheduler) prerequisites.scheduler();
+    }
+
+    @Override
+    public ExecutorServiceFactory createExecutorServiceFactory(String id, ThreadFactory threadFactory) {
+        return () -> new AbstractExecutorService() {
+            private volatile boolean shutdown;
+
+            @Override
+            public void execute(Runnable command) {
+                scheduler.execute(command);
+            }
+
+            @Override
+            public void shutdown() {
+                shutdown = true;
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                shutdown = true;
+                return Collections.emptyList();
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return shutdown;
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return shutdown;
+            }
+
+            @Override
+            public boolean awaitTermination(long timeout, TimeUnit unit) {
+                return shutdown;
+            }
+        };
+    }
+}
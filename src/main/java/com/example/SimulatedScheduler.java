@@ -0,0 +1,240 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.Cancellable;
+import akka.actor.Scheduler;
+import akka.actor.SchedulerException;
+import akka.event.LoggingAdapter;
+import com.typesafe.config.Config;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler of a discrete-event simulation, selected with
+ * {@code akka.scheduler.implementation = "com.example.SimulatedScheduler"}. Time is virtual: it stands still
+ * while there is work to do and jumps to the next timer when there is none, so a day of the shop takes as long
+ * as its messages take to process.
+ * <p>
+ * Together with {@link SimulatedExecutor} on the dispatchers, every mailbox and every timer runs on one thread
+ * of the scheduler, in the order the work was submitted and timers in the order they are due (ties in the order
+ * they were started). With seeded actors a run is therefore repeated exactly. Time only passes in
+ * {@link #advance(Duration)}, which the driver of the simulation calls; until then the thread runs the submitted
+ * work and waits, so the actor system can start up as usual.
+ */
+public final class SimulatedScheduler implements Scheduler, Closeable {
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Runnable> ready = new ArrayDeque<>();
+    private final PriorityQueue<Task> timers = new PriorityQueue<>();
+    private final LoggingAdapter log;
+    // virtual nanoseconds since the start of the actor system
+    private volatile long now;
+    private long sequence;
+    // time may pass up to until while advancing
+    private boolean advancing;
+    private long until;
+    private boolean waiting;
+    private boolean closed;
+
+    /**
+     * A timer, ordered by when it is due and then by when it was started.
+     */
+    private final class Task implements Cancellable, Runnable, Comparable<Task> {
+        private final Runnable runnable;
+        private final ExecutionContext executor;
+        // 0 for a timer which runs once
+        private final long interval;
+        private long due;
+        private long order;
+        // a cancelled timer stays in the queue until it is due and is dropped then
+        private boolean cancelled;
+        private boolean done;
+
+        private Task(long due, long interval, Runnable runnable, ExecutionContext executor) {
+            this.due = due;
+            this.interval = interval;
+            this.runnable = runnable;
+            this.executor = executor;
+        }
+
+        @Override
+        public void run() {
+            executor.execute(runnable);
+        }
+
+        @Override
+        public boolean cancel() {
+            synchronized (lock) {
+                if (cancelled || done) {
+                    return false;
+                }
+                cancelled = true;
+                return true;
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            synchronized (lock) {
+                return cancelled;
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            return due != other.due ? Long.compare(due, other.due) : Long.compare(order, other.order);
+        }
+    }
+
+    public SimulatedScheduler(Config config, LoggingAdapter log, ThreadFactory threadFactory) {
+        this.log = log;
+        Thread thread = new Thread(this::work, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the virtual time in nanoseconds, counted from the start of the actor system
+     */
+    public long nanoTime() {
+        return now;
+    }
+
+    /**
+     * Lets the given virtual time pass: runs all work and every timer due within it, then returns with the
+     * clock at the end of the time.
+     */
+    public void advance(Duration duration) throws InterruptedException {
+        synchronized (lock) {
+            until = now + duration.toNanos();
+            advancing = true;
+            lock.notifyAll();
+            while (advancing) {
+                lock.wait();
+            }
+        }
+    }
+
+    /**
+     * Submits work to the thread of the simulation, used by {@link SimulatedExecutor}.
+     */
+    void execute(Runnable runnable) {
+        synchronized (lock) {
+            ready.add(runnable);
+            if (waiting) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public Cancellable scheduleOnce(FiniteDuration delay, Runnable runnable, ExecutionContext executor) {
+        return add(delay.toNanos(), 0, runnable, executor);
+    }
+
+    // deprecated, but Akka 2.6 still requires the override: it is the abstract method the other repeated schedules call
+    @Override
+    @SuppressWarnings("deprecation")
+    public Cancellable schedule(FiniteDuration initialDelay, FiniteDuration interval, Runnable runnable, ExecutionContext executor) {
+        if (interval.toNanos() <= 0) {
+            throw new IllegalArgumentException("Interval of a repeated task must be positive, not " + interval);
+        }
+        return add(initialDelay.toNanos(), interval.toNanos(), runnable, executor);
+    }
+
+    @Override
+    public double maxFrequency() {
+        return TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            timers.clear();
+        }
+    }
+
+    private Task add(long delayNanos, long interval, Runnable runnable, ExecutionContext executor) {
+        synchronized (lock) {
+            if (closed) {
+                throw new SchedulerException("Cannot schedule after the simulation is closed");
+            }
+            Task task = new Task(now + Math.max(0, delayNanos), interval, runnable, executor);
+            task.order = sequence++;
+            timers.add(task);
+            return task;
+        }
+    }
+
+    /**
+     * The thread of the simulation: runs the submitted work in order, and once there is none lets the time
+     * pass up to the next timer while advancing.
+     */
+    private void work() {
+        while (true) {
+            Runnable next;
+            synchronized (lock) {
+                next = ready.poll();
+                while (next == null) {
+                    next = advancing ? nextTimer() : null;
+                    if (next != null) {
+                        break;
+                    }
+                    if (advancing) {
+                        now = until;
+                        advancing = false;
+                        lock.notifyAll();
+                    }
+                    waiting = true;
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    } finally {
+                        waiting = false;
+                    }
+                    next = ready.poll();
+                }
+            }
+            try {
+                next.run();
+            } catch (Throwable t) {
+                log.error(t, "Simulated task failed");
+            }
+        }
+    }
+
+    /**
+     * @return the next timer due until the end of the advance, with the clock set to it, or null
+     */
+    private Task nextTimer() {
+        Task task = timers.peek();
+        while (task != null && task.cancelled) {
+            timers.poll();
+            task = timers.peek();
+        }
+        if (task == null || task.due > until) {
+            return null;
+        }
+        timers.poll();
+        now = task.due;
+        if (task.interval == 0) {
+            task.done = true;
+        } else {
+            task.due += task.interval;
+            task.order = sequence++;
+            timers.add(task);
+        }
+        return task;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.typed.ActorSystem;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the shop as a discrete-event simulation on virtual time ({@code simulation.conf}, settings under
+ * {@code coffee.simulation}). The same actors as in the real shop run on the {@link SimulatedScheduler}: the
+ * warm-up and the measurement pass in simulated time, which jumps from one timer to the next, and the summary
+ * is the one of {@link LoadTest} with the latencies in simulated time. With the same seed and configuration a
+ * simulation repeats exactly.
+ * <p>
+ * Exits with 0, or with 1 if no coffee was served during the measurement.
+ */
+public final class Simulation {
+
+    private static final Logger log = LoggerFactory.getLogger(Simulation.class);
+
+    private Simulation() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long wallStart = System.nanoTime();
+        Config config = LoadTest.seeded(ConfigFactory.load("simulation"));
+        ShopMetrics.Measurement measurement = run(config, wallStart);
+        LoadTest.write(summary(config, measurement, System.nanoTime() - wallStart),
+                config.getString("coffee.simulation.output"));
+        System.exit(measurement.coffees > 0 ? 0 : 1);
+    }
+
+    /**
+     * Runs the shop for the warm-up and the measurement of the configuration in simulated time.
+     *
+     * @param config    seeded configuration with the settings under {@code coffee.simulation}
+     * @param wallStart wall clock the progress is logged against
+     * @return the measurement after the warm-up
+     */
+    static ShopMetrics.Measurement run(Config config, long wallStart) throws InterruptedException {
+        Config simulation = config.getConfig("coffee.simulation");
+        Duration warmUp = simulation.getDuration("warm-up");
+        Duration duration = simulation.getDuration("duration");
+        Duration progressInterval = simulation.getDuration("progress-interval");
+
+        ActorSystem<CoffeeMain.Command> system = ActorSystem.create(CoffeeMain.create(), "mainCoffeeActor", config);
+        try {
+            SimulatedScheduler scheduler = ShopClock.get(system).simulation();
+            if (scheduler == null) {
+                throw new IllegalStateException("A simulation needs akka.scheduler.implementation = \""
+                        + SimulatedScheduler.class.getName() + "\"");
+            }
+            ShopMetrics metrics = ShopMetrics.get(system);
+            system.tell(new CoffeeMain.StartMessage());
+            advance(scheduler, metrics, warmUp, progressInterval, wallStart);
+            metrics.startMeasurement();
+            advance(scheduler, metrics, duration, progressInterval, wallStart);
+            return metrics.stopMeasurement();
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().join();
+        }
+    }
+
+    /**
+     * @return the summary of the load test for the measurement, which only differs between two runs of the same
+     * seeded configuration in its wall clock
+     */
+    static String summary(Config config, ShopMetrics.Measurement measurement, long wallNanos) {
+        return LoadTest.summary(CoffeeSettings.fromConfig(config), config.getLong("coffee.random-seed"), "simulated",
+                config.getDuration("coffee.simulation.warm-up"), measurement, wallNanos);
+    }
+
+    /**
+     * Lets the time pass in steps of the progress interval and logs the progress after every step.
+     */
+    private static void advance(SimulatedScheduler scheduler, ShopMetrics metrics, Duration time, Duration progressInterval,
+                                long wallStart) throws InterruptedException {
+        Duration left = time;
+        while (!left.isZero() && !left.isNegative()) {
+            Duration step = progressInterval.isZero() || progressInterval.compareTo(left) > 0 ? left : progressInterval;
+            scheduler.advance(step);
+            left = left.minus(step);
+            log.info("Simulated {} in {} s, {} coffees served", Duration.ofNanos(scheduler.nanoTime()),
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - wallStart), metrics.coffees());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+
+/**
+ * How long a customer waits before the next action, or the open-loop load waits for the next arrival.
+ * The time is drawn from the random generator of the caller, so a run with a fixed seed repeats.
+ */
+public interface ThinkTime {
+
+    /**
+     * @param random the random generator of the caller
+     * @return the next waiting time
+     */
+    Duration next(SplittableRandom random);
+
+    /**
+     * Always waits the same time.
+     */
+    static ThinkTime fixed(Duration duration) {
+        return random -> duration;
+    }
+
+    /**
+     * Waits a uniformly distributed time between min and max.
+     */
+    static ThinkTime uniform(Duration min, Duration max) {
+        long minNanos = min.toNanos();
+        long maxNanos = max.toNanos();
+        if (maxNanos < minNanos) {
+            throw new IllegalArgumentException("max think time " + max + " is below min think time " + min);
+        }
+        return random -> Duration.ofNanos(minNanos + (long) (random.nextDouble() * (maxNanos - minNanos)));
+    }
+
+    /**
+     * Waits an exponentially distributed time with the given mean, as between arrivals of a Poisson process.
+     */
+    static ThinkTime exponential(Duration mean) {
+        long meanNanos = mean.toNanos();
+        return random -> Duration.ofNanos((long) (-Math.log(1.0 - random.nextDouble()) * meanNanos));
+    }
+}
@@ -0,0 +1,48 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.dispatch.DispatcherPrerequisites;
+import akka.dispatch.ExecutorServiceConfigurator;
+import akka.dispatch.ExecutorServiceFactory;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executor of a dispatcher which runs every mailbox on a virtual thread, selected in a dispatcher
+ * configuration with {@code executor = "com.example.VirtualThreadExecutor"}. Virtual threads need Java 21;
+ * they are looked up by reflection so the shop still builds for Java 17, where the dispatcher falls back
+ * to a fork-join pool with one thread per core.
+ */
+public final class VirtualThreadExecutor extends ExecutorServiceConfigurator {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadExecutor.class);
+
+    public VirtualThreadExecutor(Config config, DispatcherPrerequisites prerequisites) {
+        super(config, prerequisites);
+    }
+
+    @Override
+    public ExecutorServiceFactory createExecutorServiceFactory(String id, ThreadFactory threadFactory) {
+        return () -> create(id);
+    }
+
+    private static ExecutorService create(String id) {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads need Java 21, dispatcher {} runs on a fork-join pool (Java {})",
+                    id, System.getProperty("java.version"));
+            return new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class AdmissionTest {
+
+    private static final Duration RETRY_AFTER = Duration.ofMillis(50);
+
+    private long now = 1_000_000_000L;
+
+    @Test
+    public void shedsBeyondTheInFlightLimit() {
+        Admission admission = new Admission(2, 0, 1, RETRY_AFTER, () -> now);
+        assertNull(admission.admit(0));
+        assertNull(admission.admit(1));
+        assertEquals(RETRY_AFTER, admission.admit(2));
+        assertEquals(RETRY_AFTER, admission.admit(10));
+        assertNull("answered requests make room again", admission.admit(1));
+    }
+
+    /**
+     * A full bucket lets a burst through at once; after that requests get in at the rate, and a turned away
+     * customer is told to wait until the next token, but at least the retry-after.
+     */
+    @Test
+    public void admitsABurstAndThenTheRate() {
+        Admission admission = new Admission(0, 10, 3, RETRY_AFTER, () -> now);
+        for (int i = 0; i < 3; i++) {
+            assertNull(admission.admit(i));
+        }
+        assertEquals(Duration.ofMillis(100), admission.admit(3));
+
+        now += Duration.ofMillis(100).toNanos();
+        assertNull(admission.admit(0));
+        now += Duration.ofMillis(90).toNanos();
+        assertEquals(RETRY_AFTER, admission.admit(0));
+
+        // an idle bucket fills up to the burst, not beyond
+        now += Duration.ofSeconds(10).toNanos();
+        for (int i = 0; i < 3; i++) {
+            assertNull(admission.admit(0));
+        }
+        assertEquals(Duration.ofMillis(100), admission.admit(0));
+    }
+
+    @Test
+    public void checksTheInFlightLimitBeforeTakingAToken() {
+        Admission admission = new Admission(1, 10, 1, RETRY_AFTER, () -> now);
+        assertEquals(RETRY_AFTER, admission.admit(1));
+        assertNull("the shed request took no token", admission.admit(0));
+    }
+
+    @Test
+    public void unlimitedAdmitsEverything() {
+        Admission admission = Admission.unlimited();
+        for (int i = 0; i < 1000; i++) {
+            assertNull(admission.admit(i));
+        }
+    }
+}
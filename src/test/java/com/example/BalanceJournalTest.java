@@ -0,0 +1,140 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BalanceJournalTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recoversTheLastBalanceOfEveryCustomer() throws IOException {
+        BalanceJournal.Settings settings = settings(1_000);
+        try (BalanceJournal journal = BalanceJournal.open(settings, 0)) {
+            journal.balanceChanged(7, 1);
+            journal.balanceChanged(8, 5);
+            journal.balanceChanged(7, 2);
+            journal.commit();
+            journal.balanceChanged(7, 3);
+        }
+
+        try (BalanceJournal recovered = BalanceJournal.open(settings, 0)) {
+            assertEquals(2, recovered.customers());
+            assertEquals(4, recovered.recoveredEvents());
+            assertEquals(3, recovered.adopt(7));
+            assertEquals(5, recovered.adopt(8));
+            assertEquals(-1, recovered.adopt(9));
+        }
+        try (BalanceJournal otherShard = BalanceJournal.open(settings, 1)) {
+            assertEquals(0, otherShard.customers());
+        }
+    }
+
+    /**
+     * Changes share one sync: they are only in the file, and survive a crash, once they are committed.
+     */
+    @Test
+    public void makesChangesDurableOnCommit() throws IOException {
+        BalanceJournal.Settings settings = settings(1_000);
+        BalanceJournal journal = BalanceJournal.open(settings, 0);
+        for (int customer = 1; customer <= 3; customer++) {
+            journal.balanceChanged(customer, customer * 10);
+        }
+        assertEquals(3, journal.uncommitted());
+        assertEquals(-1, crashAndRecover(settings, 2));
+
+        journal.commit();
+        assertEquals(0, journal.uncommitted());
+        assertEquals(20, crashAndRecover(settings, 2));
+        journal.close();
+    }
+
+    /**
+     * After snapshot-every changes the balances go to the snapshot and the journal starts over, so a recovery
+     * replays only what came after it.
+     */
+    @Test
+    public void startsANewJournalAfterASnapshot() throws IOException {
+        BalanceJournal.Settings settings = settings(10);
+        Path journalFile = settings.directory.resolve("shard-0.journal");
+        try (BalanceJournal journal = BalanceJournal.open(settings, 0)) {
+            for (int i = 0; i < 12; i++) {
+                journal.balanceChanged(i % 4 + 1, i);
+            }
+            journal.commit();
+            assertTrue(Files.exists(settings.directory.resolve("shard-0.snapshot")));
+            assertEquals(0, Files.size(journalFile));
+            journal.balanceChanged(1, 100);
+        }
+
+        try (BalanceJournal recovered = BalanceJournal.open(settings, 0)) {
+            assertEquals(1, recovered.recoveredEvents());
+            assertEquals(4, recovered.customers());
+            assertEquals(100, recovered.adopt(1));
+            assertEquals(9, recovered.adopt(2));
+            assertEquals(11, recovered.adopt(4));
+        }
+    }
+
+    /**
+     * A record cut off by a crash was never committed; it ends the journal and is cut off the file, so the
+     * records written after the recovery are read again.
+     */
+    @Test
+    public void cutsOffAHalfWrittenRecord() throws IOException {
+        BalanceJournal.Settings settings = settings(1_000);
+        Path journalFile = settings.directory.resolve("shard-0.journal");
+        try (BalanceJournal journal = BalanceJournal.open(settings, 0)) {
+            journal.balanceChanged(1, 1);
+            journal.balanceChanged(2, 2);
+        }
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(journalFile) - 3);
+        }
+
+        try (BalanceJournal recovered = BalanceJournal.open(settings, 0)) {
+            assertEquals(1, recovered.recoveredEvents());
+            assertEquals(-1, recovered.adopt(2));
+            recovered.balanceChanged(3, 3);
+        }
+        try (BalanceJournal recovered = BalanceJournal.open(settings, 0)) {
+            assertEquals(1, recovered.adopt(1));
+            assertEquals(3, recovered.adopt(3));
+        }
+    }
+
+    private BalanceJournal.Settings settings(int snapshotEvery) throws IOException {
+        return new BalanceJournal.Settings(folder.newFolder().toPath(), 1024, snapshotEvery);
+    }
+
+    /**
+     * @return the balance of the customer recovered from a copy of the files, as a crash would leave them
+     */
+    private int crashAndRecover(BalanceJournal.Settings settings, int customer) throws IOException {
+        Path copy = folder.newFolder().toPath();
+        try (Stream<Path> files = Files.list(settings.directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, copy.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        try (BalanceJournal recovered = BalanceJournal.open(new BalanceJournal.Settings(copy, 1024, 1_000), 0)) {
+            return recovered.adopt(customer);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BalanceStoreTest {
+
+    /**
+     * A store sized for one customer grows many times over; every customer keeps its balance through the resizes.
+     */
+    @Test
+    public void keepsEveryBalanceWhileItGrows() {
+        BalanceStore store = new BalanceStore(1);
+        int customers = 100_000;
+        long total = 0;
+        for (int customer = 1; customer <= customers; customer++) {
+            assertEquals(customer % 7, store.add(customer, customer % 7));
+            total += customer % 7;
+        }
+        assertEquals(customers, store.size());
+        assertEquals(total, store.total());
+        for (int customer = 1; customer <= customers; customer++) {
+            assertEquals(customer % 7, store.get(customer));
+        }
+        assertFalse(store.contains(customers + 1));
+    }
+
+    /**
+     * Ids which land on the same slot are found by probing past each other, before and after the table grows.
+     */
+    @Test
+    public void probesPastCollidingIds() {
+        List<Integer> colliding = new ArrayList<>();
+        int mask = 1023;
+        for (int id = 1; colliding.size() < 20; id++) {
+            // the mix of BalanceStore, to find ids which share their slot in a table of 1024
+            int h = id * 0x9E3779B9;
+            if (((h ^ (h >>> 16)) & mask) == 0) {
+                colliding.add(id);
+            }
+        }
+        BalanceStore store = new BalanceStore(512);
+        for (int i = 0; i < colliding.size(); i++) {
+            store.add(colliding.get(i), i + 1);
+        }
+        for (int i = 0; i < colliding.size(); i++) {
+            assertEquals(i + 1, store.get(colliding.get(i)));
+        }
+        // the colliding ids fill the slots after the first one, other ids probe past them as well
+        for (int customer = 1; customer <= 1000; customer++) {
+            if (!colliding.contains(customer)) {
+                store.add(customer, -customer);
+            }
+        }
+        for (int i = 0; i < colliding.size(); i++) {
+            assertEquals(i + 1, store.get(colliding.get(i)));
+        }
+        assertEquals(-1000, store.get(1000));
+    }
+
+    @Test
+    public void debitsOnlyCustomersWithCredit() {
+        BalanceStore store = new BalanceStore();
+        assertFalse(store.tryDebit(1));
+        assertFalse(store.contains(1));
+        store.add(1, 2);
+        store.add(2, 0);
+        assertTrue(store.tryDebit(1));
+        assertTrue(store.tryDebit(1));
+        assertFalse(store.tryDebit(1));
+        assertFalse(store.tryDebit(2));
+        assertEquals(0, store.get(1));
+        assertEquals(0, store.total());
+        assertEquals(2, store.size());
+    }
+
+    /**
+     * After every recharge or debit the ranked store lists the same highest balances as sorting all balances
+     * would, while the table grows under it; negative balances rank as 0.
+     */
+    @Test
+    public void keepsTheHighestBalancesRankedThroughEveryChange() {
+        BalanceStore store = new BalanceStore(1, true);
+        Map<Integer, Integer> balances = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(1);
+        int[] topCustomers = new int[10];
+        int[] topBalances = new int[10];
+        long total = 0;
+        for (int change = 0; change < 5_000; change++) {
+            int customer = random.nextInt(1, 300);
+            if (random.nextInt(3) == 0) {
+                boolean debited = store.tryDebit(customer);
+                assertEquals(balances.getOrDefault(customer, 0) > 0, debited);
+                if (debited) {
+                    balances.merge(customer, -1, Integer::sum);
+                    total--;
+                }
+            } else {
+                int amount = random.nextInt(-2, 5);
+                balances.merge(customer, amount, Integer::sum);
+                store.add(customer, amount);
+                total += amount;
+            }
+
+            int count = store.top(topCustomers, topBalances);
+            int[] expected = balances.values().stream().mapToInt(balance -> -Math.max(0, balance)).sorted().toArray();
+            assertEquals(Math.min(topCustomers.length, expected.length), count);
+            for (int rank = 0; rank < count; rank++) {
+                assertEquals(-expected[rank], Math.max(0, topBalances[rank]));
+                assertEquals((int) balances.get(topCustomers[rank]), topBalances[rank]);
+            }
+            assertEquals(total, store.total());
+        }
+        assertEquals(balances.size(), store.size());
+    }
+
+    @Test
+    public void copiesNoMoreThanTheArraysHold() {
+        BalanceStore store = new BalanceStore(16, true);
+        store.add(1, 3);
+        store.add(2, -1);
+        int[] customers = new int[5];
+        int[] balances = new int[5];
+        assertEquals(2, store.top(customers, balances));
+        assertEquals(Arrays.asList(1, 2), Arrays.asList(customers[0], customers[1]));
+        assertEquals(Arrays.asList(3, -1), Arrays.asList(balances[0], balances[1]));
+        assertEquals(1, store.top(new int[1], new int[3]));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void ranksOnlyWhenAskedTo() {
+        new BalanceStore(16).top(new int[1], new int[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsIdsWhichAreNotPositive() {
+        new BalanceStore().get(0);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import com.typesafe.config.ConfigFactory;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class CashRegisterJournalTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource(ConfigFactory.load());
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int CUSTOMER = 1;
+
+    /**
+     * A committed credit has no reply which waits for the journal. The debit must still be committed on its own,
+     * or a shard which dies before its next reply comes back with the coffee unpaid.
+     */
+    @Test
+    public void commitsTheDebitOfACommittedCredit() throws IOException, InterruptedException {
+        BalanceJournal.Settings settings = new BalanceJournal.Settings(folder.newFolder("journal").toPath(), 1024, 100_000);
+        ActorRef<CashRegister.Request> shard = testKit.spawn(CashRegister.create(Duration.ofMinutes(1), settings, 0));
+        TestProbe<Object> probe = testKit.createTestProbe();
+        ActorRef<Customer.Response> customer = probe.ref().narrow();
+        ActorRef<LoadBalancer.Mixed> loadBalancer = probe.ref().narrow();
+
+        shard.tell(new CashRegister.Recharge(customer, CUSTOMER));
+        shard.tell(new CashRegister.Recharge(customer, CUSTOMER));
+        assertEquals(1, probe.expectMessageClass(Customer.RechargeSuccess.class).balance);
+        assertEquals(2, probe.expectMessageClass(Customer.RechargeSuccess.class).balance);
+        shard.tell(new CashRegister.State(loadBalancer, customer, CUSTOMER));
+        long reservation = probe.expectMessageClass(LoadBalancer.CreditSuccess.class).reservation;
+        shard.tell(new CashRegister.CommitCredit(CUSTOMER, reservation));
+
+        // the shard is never stopped, so its journal is not closed: what a copy of the files replays is what
+        // a crash would leave behind
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        int replayed;
+        while ((replayed = replay(settings)) != 1 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(20);
+        }
+        assertEquals("the balance replayed after the shard died", 1, replayed);
+        testKit.stop(shard);
+    }
+
+    /**
+     * @return the balance of the customer recovered from a copy of the journal of shard 0
+     */
+    private int replay(BalanceJournal.Settings settings) throws IOException {
+        Path copy = Files.createTempDirectory(folder.getRoot().toPath(), "crashed");
+        try (Stream<Path> files = Files.list(settings.directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, copy.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        BalanceJournal recovered = BalanceJournal.open(new BalanceJournal.Settings(copy, 1024, 100_000), 0);
+        try {
+            return recovered.adopt(CUSTOMER);
+        } finally {
+            recovered.close();
+        }
+    }
+}
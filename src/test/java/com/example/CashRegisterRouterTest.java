@@ -0,0 +1,106 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import com.typesafe.config.ConfigFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.BitSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CashRegisterRouterTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource(ConfigFactory.load());
+
+    private static final int SHARDS = 4;
+    private static final int CUSTOMERS = 40;
+
+    /**
+     * Every customer sends the same mix of recharges and balance checks, interleaved with the other customers.
+     * The answers only come out as expected if each shard sees the requests of a customer in the order they
+     * were sent: a balance check before a recharge fails, one after it holds the credit.
+     */
+    @Test
+    public void keepsTheOrderOfEveryCustomer() {
+        ActorRef<CashRegister.Request> router = testKit.spawn(CashRegisterRouter.create(SHARDS, null, Duration.ofMinutes(1)));
+        @SuppressWarnings("unchecked")
+        TestProbe<Object>[] probes = new TestProbe[CUSTOMERS];
+        BitSet shards = new BitSet(SHARDS);
+        for (int i = 0; i < CUSTOMERS; i++) {
+            probes[i] = testKit.createTestProbe();
+            shards.set(CashRegisterRouter.shardIndex(i + 1, SHARDS));
+        }
+        assertEquals("the customers are spread over every shard", SHARDS, shards.cardinality());
+
+        String steps = "SRSSRRS";
+        for (char step : steps.toCharArray()) {
+            for (int i = 0; i < CUSTOMERS; i++) {
+                int customer = i + 1;
+                ActorRef<Customer.Response> replies = probes[i].ref().narrow();
+                if (step == 'R') {
+                    router.tell(new CashRegister.Recharge(replies, customer));
+                } else {
+                    ActorRef<LoadBalancer.Mixed> loadBalancer = probes[i].ref().narrow();
+                    router.tell(new CashRegister.State(loadBalancer, replies, customer));
+                }
+            }
+        }
+
+        for (int i = 0; i < CUSTOMERS; i++) {
+            int customer = i + 1;
+            TestProbe<Object> probe = probes[i];
+            assertEquals(customer, probe.expectMessageClass(LoadBalancer.CreditFail.class).customerId);
+            assertEquals(1, probe.expectMessageClass(Customer.RechargeSuccess.class).balance);
+            assertEquals(customer, probe.expectMessageClass(LoadBalancer.CreditSuccess.class).customerId);
+            // the only credit is held by the previous check
+            assertEquals(customer, probe.expectMessageClass(LoadBalancer.CreditFail.class).customerId);
+            assertEquals(2, probe.expectMessageClass(Customer.RechargeSuccess.class).balance);
+            assertEquals(3, probe.expectMessageClass(Customer.RechargeSuccess.class).balance);
+            assertTrue(probe.expectMessageClass(LoadBalancer.CreditSuccess.class).reservation >= 0);
+            probe.expectNoMessage(Duration.ofMillis(10));
+        }
+    }
+
+    /**
+     * A batch of balance checks is split by shard, every shard answers for its part of the batch.
+     */
+    @Test
+    public void splitsBatchesByShard() {
+        ActorRef<CashRegister.Request> router = testKit.spawn(CashRegisterRouter.create(SHARDS, null, Duration.ofMinutes(1)));
+        TestProbe<LoadBalancer.Mixed> loadBalancer = testKit.createTestProbe();
+        TestProbe<Customer.Response> customer = testKit.createTestProbe();
+        int[] ids = new int[CUSTOMERS];
+        for (int i = 0; i < CUSTOMERS; i++) {
+            ids[i] = i + 1;
+            if (i % 2 == 0) {
+                router.tell(new CashRegister.Recharge(customer.ref(), ids[i]));
+            }
+        }
+        router.tell(new CashRegister.StateBatch(loadBalancer.ref(), ids));
+
+        int answered = 0;
+        int granted = 0;
+        for (int shard = 0; shard < SHARDS; shard++) {
+            LoadBalancer.CreditBatch batch = (LoadBalancer.CreditBatch) loadBalancer.receiveMessage();
+            for (int i = 0; i < batch.size(); i++) {
+                assertEquals(batch.customerId(i) % 2 == 1, batch.granted(i));
+                if (batch.granted(i)) {
+                    granted++;
+                }
+            }
+            answered += batch.size();
+        }
+        assertEquals(CUSTOMERS, answered);
+        assertEquals(CUSTOMERS / 2, granted);
+        loadBalancer.expectNoMessage(Duration.ofMillis(10));
+    }
+}
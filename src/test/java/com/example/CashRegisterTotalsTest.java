@@ -0,0 +1,110 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import com.typesafe.config.ConfigFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class CashRegisterTotalsTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource(ConfigFactory.load());
+
+    private static final int SHARDS = 4;
+    private static final int CUSTOMERS = 8;
+
+    /**
+     * The sums are added up, and the highest balances are merged from the heads of the sorted parts.
+     */
+    @Test
+    public void mergesTheHighestBalancesOfEveryShard() {
+        CashRegister.Totals merged = CashRegister.Totals.merge(Arrays.asList(
+                new CashRegister.Totals(20, 3, 1, new int[]{1, 2, 3}, new int[]{9, 6, 5}, 1),
+                new CashRegister.Totals(0, 0, 0, new int[0], new int[0], 1),
+                new CashRegister.Totals(15, 2, 2, new int[]{4, 5}, new int[]{8, 7}, 1)), 4);
+
+        assertEquals(35, merged.totalBalance);
+        assertEquals(5, merged.customers);
+        assertEquals(3, merged.heldCredits);
+        assertEquals(3, merged.shards);
+        assertEquals(4, merged.topSize());
+        int[] customers = {1, 4, 5, 2};
+        int[] balances = {9, 8, 7, 6};
+        for (int rank = 0; rank < customers.length; rank++) {
+            assertEquals(customers[rank], merged.topCustomer(rank));
+            assertEquals(balances[rank], merged.topBalance(rank));
+        }
+
+        assertEquals("no more than the parts have", 5, CashRegister.Totals.merge(Arrays.asList(
+                new CashRegister.Totals(20, 3, 0, new int[]{1, 2, 3}, new int[]{9, 6, 5}, 1),
+                new CashRegister.Totals(15, 2, 0, new int[]{4, 5}, new int[]{8, 7}, 1)), 10).topSize());
+    }
+
+    /**
+     * Customer i is recharged i times and the first customer's only credit is held; the held credit stays in the
+     * total until it is committed, and the ranked shards rank the customers across the shards.
+     */
+    @Test
+    public void answersTheTotalsAcrossTheShards() {
+        ActorRef<CashRegister.Request> router = testKit.spawn(CashRegisterRouter.create(SHARDS, null, Duration.ofMinutes(1), true));
+        TestProbe<Customer.Response> customer = testKit.createTestProbe();
+        for (int customerId = 1; customerId <= CUSTOMERS; customerId++) {
+            for (int i = 0; i < customerId; i++) {
+                router.tell(new CashRegister.Recharge(customer.ref(), customerId));
+            }
+        }
+        customer.receiveSeveralMessages(CUSTOMERS * (CUSTOMERS + 1) / 2);
+        TestProbe<LoadBalancer.Mixed> loadBalancer = testKit.createTestProbe();
+        router.tell(new CashRegister.State(loadBalancer.ref(), customer.ref(), 1));
+        long reservation = loadBalancer.expectMessageClass(LoadBalancer.CreditSuccess.class).reservation;
+
+        TestProbe<CashRegister.Totals> totals = testKit.createTestProbe();
+        router.tell(new CashRegister.GetTotals(totals.ref(), 3));
+        CashRegister.Totals answer = totals.receiveMessage();
+        assertEquals(SHARDS, answer.shards);
+        assertEquals(CUSTOMERS, answer.customers);
+        assertEquals(CUSTOMERS * (CUSTOMERS + 1) / 2, answer.totalBalance);
+        assertEquals(1, answer.heldCredits);
+        assertEquals(3, answer.topSize());
+        for (int rank = 0; rank < 3; rank++) {
+            assertEquals(CUSTOMERS - rank, answer.topCustomer(rank));
+            assertEquals(CUSTOMERS - rank, answer.topBalance(rank));
+        }
+
+        // the totals follow every change, not a copy taken earlier
+        router.tell(new CashRegister.CommitCredit(1, reservation));
+        for (int i = 0; i < 7; i++) {
+            router.tell(new CashRegister.Recharge(customer.ref(), 2));
+        }
+        customer.receiveSeveralMessages(7);
+        router.tell(new CashRegister.GetTotals(totals.ref(), 1));
+        answer = totals.receiveMessage();
+        assertEquals(CUSTOMERS * (CUSTOMERS + 1) / 2 - 1 + 7, answer.totalBalance);
+        assertEquals(0, answer.heldCredits);
+        assertEquals(2, answer.topCustomer(0));
+        assertEquals(9, answer.topBalance(0));
+    }
+
+    @Test
+    public void leavesTheTopEmptyWithoutRanking() {
+        ActorRef<CashRegister.Request> router = testKit.spawn(CashRegisterRouter.create(SHARDS, null, Duration.ofMinutes(1)));
+        TestProbe<Customer.Response> customer = testKit.createTestProbe();
+        router.tell(new CashRegister.Recharge(customer.ref(), 1));
+        customer.receiveMessage();
+        TestProbe<CashRegister.Totals> totals = testKit.createTestProbe();
+        router.tell(new CashRegister.GetTotals(totals.ref(), 3));
+        CashRegister.Totals answer = totals.receiveMessage();
+        assertEquals(1, answer.totalBalance);
+        assertEquals(0, answer.topSize());
+    }
+}
@@ -0,0 +1,85 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import com.typesafe.config.ConfigFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+
+public class CoffeeMachineTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource(ConfigFactory.load());
+
+    private static final Duration BREW_DURATION = Duration.ofMillis(300);
+
+    /**
+     * Requests wait for the brew cycle; every cycle serves the oldest waiting requests, at most a batch of them,
+     * and the customers who come after the last cup get a fail.
+     */
+    @Test
+    public void servesTheOldestRequestsOneBatchPerCycle() {
+        TestProbe<LoadBalancer.Mixed> subscriber = testKit.createTestProbe();
+        TestProbe<Customer.Response> customer = testKit.createTestProbe();
+        ActorRef<CoffeeMachine.Request> machine = testKit.spawn(CoffeeMachine.create(3, Duration.ZERO, BREW_DURATION, 2));
+        machine.tell(new CoffeeMachine.GiveSupply(subscriber.ref()));
+        expectSupply(subscriber, 3, 0);
+
+        for (int customerId = 1; customerId <= 5; customerId++) {
+            machine.tell(new CoffeeMachine.GetCoffee(customer.ref(), customerId));
+        }
+        customer.expectNoMessage(Duration.ofMillis(100));
+
+        assertEquals(1, customer.expectMessageClass(Customer.GetSuccess.class).customerId);
+        assertEquals(2, customer.expectMessageClass(Customer.GetSuccess.class).customerId);
+        assertEquals(3, customer.expectMessageClass(Customer.GetSuccess.class).customerId);
+        assertEquals(4, customer.expectMessageClass(Customer.GetFail.class).customerId);
+        assertEquals(5, customer.expectMessageClass(Customer.GetFail.class).customerId);
+        customer.expectNoMessage(Duration.ofMillis(10));
+
+        // the queue is reported when it needs one more cycle, then after every cycle
+        expectSupply(subscriber, 3, 1);
+        expectSupply(subscriber, 3, 3);
+        expectSupply(subscriber, 3, 5);
+        expectSupply(subscriber, 1, 3);
+        expectSupply(subscriber, 0, 1);
+        expectSupply(subscriber, 0, 0);
+        subscriber.expectNoMessage(Duration.ofMillis(10));
+    }
+
+    /**
+     * The machine commits the held credit of a served customer and releases it if it has no coffee left.
+     */
+    @Test
+    public void settlesTheCreditOfEveryRequest() {
+        TestProbe<Customer.Response> customer = testKit.createTestProbe();
+        TestProbe<CashRegister.Request> cashRegister = testKit.createTestProbe();
+        ActorRef<CoffeeMachine.Request> machine = testKit.spawn(CoffeeMachine.create(1, Duration.ZERO, Duration.ZERO, 1));
+
+        machine.tell(new CoffeeMachine.GetCoffee(customer.ref(), 1, cashRegister.ref(), 11));
+        machine.tell(new CoffeeMachine.GetCoffee(customer.ref(), 2, cashRegister.ref(), 12));
+
+        assertEquals(1, customer.expectMessageClass(Customer.GetSuccess.class).customerId);
+        assertEquals(2, customer.expectMessageClass(Customer.GetFail.class).customerId);
+        CashRegister.CommitCredit commit = cashRegister.expectMessageClass(CashRegister.CommitCredit.class);
+        assertEquals(1, commit.customerId);
+        assertEquals(11, commit.reservation);
+        CashRegister.ReleaseCredit release = cashRegister.expectMessageClass(CashRegister.ReleaseCredit.class);
+        assertEquals(2, release.customerId);
+        assertEquals(12, release.reservation);
+    }
+
+    private static void expectSupply(TestProbe<LoadBalancer.Mixed> subscriber, int remainingCoffee, int queued) {
+        LoadBalancer.GetSupply supply = subscriber.expectMessageClass(LoadBalancer.GetSupply.class);
+        assertEquals(remainingCoffee, supply.remainingCoffee);
+        assertEquals(queued, supply.queued);
+    }
+}
@@ -0,0 +1,215 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.ExtendedActorSystem;
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorRefResolver;
+import akka.actor.typed.javadsl.Adapter;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import com.typesafe.config.ConfigFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.NotSerializableException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CoffeeSerializerTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource(ConfigFactory.load());
+
+    private static final int MANIFESTS = 23;
+
+    private final CoffeeSerializer serializer = new CoffeeSerializer((ExtendedActorSystem) Adapter.toClassic(testKit.system()));
+    private final ActorRefResolver resolver = ActorRefResolver.get(testKit.system());
+
+    /**
+     * One message of every type comes back as the same type, and written again gives the same bytes, so no field
+     * is lost on the way.
+     */
+    @Test
+    public void roundTripsEveryManifest() throws NotSerializableException {
+        ActorRef<Object> machine = testKit.spawn(Behaviors.ignore(), "CoffeeMachine2");
+        ActorRef<Object> customer = testKit.spawn(Behaviors.ignore(), "Customer17");
+        ActorRef<Object> other = testKit.spawn(Behaviors.ignore(), "LoadBalancer");
+        BitSet granted = new BitSet();
+        granted.set(1);
+        List<Object> messages = Arrays.asList(
+                new CashRegister.Recharge(customer.narrow(), 17),
+                new CashRegister.State(other.narrow(), customer.narrow(), 17),
+                new CashRegister.CommitCredit(17, 42),
+                new CashRegister.ReleaseCredit(17, 43),
+                new CashRegister.StateBatch(other.narrow(), new int[]{17, 18}),
+                new LoadBalancer.CreditSuccess(customer.narrow(), 17, 44),
+                new LoadBalancer.CreditFail(customer.narrow(), 17),
+                new LoadBalancer.CreditBatch(new int[]{17, 18}, granted, new long[]{0, 45}),
+                new LoadBalancer.GetSupply(machine.narrow(), 9, 1234, 7.5, true, 3),
+                new LoadBalancer.GetCoffee(customer.narrow(), 17),
+                new CoffeeMachine.GiveSupply(other.narrow()),
+                new CoffeeMachine.GetCoffee(customer.narrow(), 17, other.narrow(), 46),
+                new CoffeeMachine.GetCoffee(customer.narrow(), 17),
+                CoffeeMachine.StartRefill.INSTANCE,
+                new CoffeeMachine.Refill(10),
+                new Customer.RechargeSuccess(17, 5),
+                Customer.BalanceFail.of(17),
+                new Customer.GetCoffeeMachine(17, machine.narrow(), 47),
+                Customer.GetSuccess.of(17),
+                Customer.GetFail.of(17),
+                new Customer.Busy(17, Duration.ofMillis(100)),
+                new CashRegister.GetTotals(other.narrow(), 10),
+                new CashRegister.Totals(12, 2, 1, new int[]{17, 18}, new int[]{7, 5}, 4),
+                new CoffeeMachine.GetStatus(other.narrow()));
+
+        Set<String> manifests = new HashSet<>();
+        for (Object message : messages) {
+            Object copy = roundTrip(message);
+            assertSame(message.getClass(), copy.getClass());
+            assertArrayEquals(serializer.manifest(message), serializer.toBinary(message), serializer.toBinary(copy));
+            manifests.add(serializer.manifest(message));
+        }
+        assertEquals("a message of every manifest", MANIFESTS, manifests.size());
+        assertSame(CoffeeMachine.StartRefill.INSTANCE, roundTrip(CoffeeMachine.StartRefill.INSTANCE));
+        assertNull(((CoffeeMachine.GetCoffee) roundTrip(new CoffeeMachine.GetCoffee(customer.narrow(), 17))).cashRegister);
+    }
+
+    /**
+     * Names are written as a stem and the number at their end; leading zeros stay part of the stem.
+     */
+    @Test
+    public void keepsNamesWithLeadingZeros() throws NotSerializableException {
+        for (String name : new String[]{"Customer007", "Customer0", "Customer00", "Customer10", "007", "Machine"}) {
+            ActorRef<Object> ref = testKit.spawn(Behaviors.ignore(), name);
+            assertSameRef(ref, recharge(ref).sender);
+        }
+    }
+
+    /**
+     * A uid is a random int and half of them are negative; 0 means no uid and is not written by Akka.
+     */
+    @Test
+    public void keepsNegativeUids() throws NotSerializableException {
+        String path = resolver.toSerializationFormat(testKit.system().deadLetters());
+        for (int uid : new int[]{-1, -123_456_789, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+            String format = path.substring(0, path.lastIndexOf('/')) + "/user/Customer7#" + uid;
+            ActorRef<Object> ref = resolver.resolveActorRef(format);
+            assertEquals(format, resolver.toSerializationFormat(ref));
+            assertEquals(format, resolver.toSerializationFormat(recharge(ref).sender));
+        }
+    }
+
+    /**
+     * Dead letters and the temporary actors of an ask have no uid in their path.
+     */
+    @Test
+    public void keepsRefsWithoutUid() throws NotSerializableException {
+        ActorRef<Object> deadLetters = testKit.system().deadLetters();
+        assertTrue(resolver.toSerializationFormat(deadLetters).indexOf('#') < 0);
+        assertSameRef(deadLetters, recharge(deadLetters).sender);
+
+        TestProbe<CoffeeMachine.Request> machine = testKit.createTestProbe();
+        AskPattern.<CoffeeMachine.Request, LoadBalancer.GetSupply>ask(machine.ref(), CoffeeMachine.GetStatus::new,
+                Duration.ofSeconds(3), testKit.system().scheduler());
+        ActorRef<LoadBalancer.GetSupply> temp = machine.expectMessageClass(CoffeeMachine.GetStatus.class).replyTo;
+        assertTrue(temp.path().toString(), temp.path().toString().contains("/temp/"));
+        CoffeeMachine.GetStatus status = (CoffeeMachine.GetStatus) roundTrip(new CoffeeMachine.GetStatus(temp));
+        assertSameRef(temp, status.replyTo);
+    }
+
+    @Test
+    public void roundTripsAnEmptyCreditBatch() throws NotSerializableException {
+        LoadBalancer.CreditBatch batch = (LoadBalancer.CreditBatch) roundTrip(
+                new LoadBalancer.CreditBatch(new int[0], new BitSet(), new long[0]));
+        assertEquals(0, batch.size());
+        assertEquals(-1, batch.nextGranted(0));
+    }
+
+    /**
+     * Only the granted customers carry a reservation, written as the distance to the previous one, which may be
+     * negative when the shards hand them out apart.
+     */
+    @Test
+    public void roundTripsASparseCreditBatch() throws NotSerializableException {
+        int size = 200;
+        int[] ids = new int[size];
+        BitSet granted = new BitSet(size);
+        long[] reservations = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = i * 1000 + 1;
+        }
+        granted.set(3);
+        granted.set(64);
+        granted.set(199);
+        reservations[3] = 1L << 40;
+        reservations[64] = 5;
+        reservations[199] = (1L << 40) + 1;
+
+        LoadBalancer.CreditBatch batch = (LoadBalancer.CreditBatch) roundTrip(
+                new LoadBalancer.CreditBatch(ids, granted, reservations));
+        assertEquals(size, batch.size());
+        for (int i = 0; i < size; i++) {
+            assertEquals(ids[i], batch.customerId(i));
+            assertEquals(granted.get(i), batch.granted(i));
+            assertEquals(reservations[i], batch.reservation(i));
+        }
+    }
+
+    @Test
+    public void keepsNegativeBalances() throws NotSerializableException {
+        assertEquals(-3, ((Customer.RechargeSuccess) roundTrip(new Customer.RechargeSuccess(17, -3))).balance);
+        assertEquals(Integer.MIN_VALUE,
+                ((Customer.RechargeSuccess) roundTrip(new Customer.RechargeSuccess(17, Integer.MIN_VALUE))).balance);
+        CashRegister.Totals totals = (CashRegister.Totals) roundTrip(
+                new CashRegister.Totals(-5, 3, 0, new int[]{2, 1, 3}, new int[]{0, -1, -4}, 2));
+        assertEquals(-5, totals.totalBalance);
+        int[] topCustomers = {2, 1, 3};
+        int[] topBalances = {0, -1, -4};
+        assertEquals(topCustomers.length, totals.topSize());
+        for (int i = 0; i < topCustomers.length; i++) {
+            assertEquals(topCustomers[i], totals.topCustomer(i));
+            assertEquals(topBalances[i], totals.topBalance(i));
+        }
+    }
+
+    @Test
+    public void roundTripsTotalsWithoutTop() throws NotSerializableException {
+        CashRegister.Totals totals = (CashRegister.Totals) roundTrip(
+                new CashRegister.Totals(1L << 35, 100_000, 12, new int[0], new int[0], 16));
+        assertEquals(1L << 35, totals.totalBalance);
+        assertEquals(100_000, totals.customers);
+        assertEquals(12, totals.heldCredits);
+        assertEquals(16, totals.shards);
+        assertEquals(0, totals.topSize());
+
+        ActorRef<CashRegister.Totals> replyTo = testKit.<CashRegister.Totals>createTestProbe().ref();
+        assertEquals(0, ((CashRegister.GetTotals) roundTrip(new CashRegister.GetTotals(replyTo, 0))).top);
+    }
+
+    private Object roundTrip(Object message) throws NotSerializableException {
+        return serializer.fromBinary(serializer.toBinary(message), serializer.manifest(message));
+    }
+
+    private CashRegister.Recharge recharge(ActorRef<?> sender) throws NotSerializableException {
+        return (CashRegister.Recharge) roundTrip(new CashRegister.Recharge(sender.<Object>unsafeUpcast().narrow(), 17));
+    }
+
+    private void assertSameRef(ActorRef<?> expected, ActorRef<?> actual) {
+        assertEquals(resolver.toSerializationFormat(expected), resolver.toSerializationFormat(actual));
+        assertEquals(expected, actual);
+    }
+}
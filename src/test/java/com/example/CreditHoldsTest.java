@@ -0,0 +1,81 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CreditHoldsTest {
+
+    @Test
+    public void expiresHoldsAfterTheTimeout() {
+        CreditHolds holds = new CreditHolds(3);
+        long first = holds.hold(1);
+        holds.hold(2);
+        holds.hold(1);
+        assertEquals(2, holds.held(1));
+        List<Integer> expired = new ArrayList<>();
+        assertEquals(0, holds.tick(expired::add));
+        assertEquals(0, holds.tick(expired::add));
+        assertEquals(3, holds.tick(expired::add));
+        assertEquals(Arrays.asList(1, 2, 1), expired);
+        assertEquals(0, holds.outstanding());
+        assertEquals(0, holds.held(1));
+        assertEquals("an expired hold cannot be settled any more", 0, holds.settle(first));
+    }
+
+    /**
+     * A settled hold gives nothing back when its timeout is over, and is settled only once.
+     */
+    @Test
+    public void releasesEveryHoldOnce() {
+        CreditHolds holds = new CreditHolds(2);
+        long taken = holds.hold(1);
+        holds.hold(2);
+        assertEquals(1, holds.settle(taken));
+        assertEquals(0, holds.settle(taken));
+        assertEquals(0, holds.settle(taken + 100));
+        assertEquals(1, holds.outstanding());
+
+        List<Integer> expired = new ArrayList<>();
+        holds.tick(expired::add);
+        holds.tick(expired::add);
+        assertEquals(Arrays.asList(2), expired);
+        assertEquals(0, holds.outstanding());
+    }
+
+    /**
+     * Holds taken one tick later expire one tick later, also after the ring grew past its first capacity.
+     */
+    @Test
+    public void keepsTheOrderOfDeadlinesWhileItGrows() {
+        CreditHolds holds = new CreditHolds(2, 16);
+        long[] early = new long[100];
+        for (int i = 0; i < early.length; i++) {
+            early[i] = holds.hold(i + 1);
+        }
+        assertEquals(0, holds.tick(customer -> { }));
+        long[] late = new long[100];
+        for (int i = 0; i < late.length; i++) {
+            late[i] = holds.hold(1000 + i);
+        }
+        for (int i = 0; i < early.length; i += 2) {
+            assertEquals(i + 1, holds.settle(early[i]));
+        }
+
+        List<Integer> expired = new ArrayList<>();
+        assertEquals(50, holds.tick(expired::add));
+        for (int i = 0; i < expired.size(); i++) {
+            assertEquals(2 * i + 2, (int) expired.get(i));
+        }
+        assertEquals(100, holds.outstanding());
+        assertEquals(1099, holds.settle(late[99]));
+        assertEquals(99, holds.tick(customer -> { }));
+    }
+}
@@ -0,0 +1,113 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.javadsl.Behaviors;
+import com.typesafe.config.ConfigFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+public class CustomerTimersTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource(ConfigFactory.parseString(
+            "customers-dispatcher {\n"
+                    + "  type = Dispatcher\n"
+                    + "  executor = fork-join-executor\n"
+                    + "  fork-join-executor { parallelism-min = 4, parallelism-max = 4 }\n"
+                    + "}\n"
+                    + "coffee.metrics.enabled = off\n"
+                    + "akka.loglevel = WARNING")
+            .withFallback(ConfigFactory.load()));
+
+    private static final int CUSTOMERS = 10_000;
+    private static final int CYCLES = 3;
+    private static final Duration THINK_TIME = Duration.ofMillis(100);
+    private static final Duration PING_BOUND = Duration.ofMillis(500);
+
+    /**
+     * Stands in for the cash register and the load balancer: answers every recharge and every coffee request
+     * right away and counts the actions of every customer.
+     */
+    private static final class Shop {
+        private final int[] actions = new int[CUSTOMERS + 1];
+        private final CountDownLatch done = new CountDownLatch(CUSTOMERS);
+
+        private Behavior<Object> behavior() {
+            return Behaviors.receive(Object.class)
+                    .onMessage(CashRegister.Recharge.class, request -> {
+                        acted(request.customerId);
+                        request.sender.tell(new Customer.RechargeSuccess(request.customerId, 1));
+                        return Behaviors.same();
+                    })
+                    .onMessage(LoadBalancer.GetCoffee.class, request -> {
+                        acted(request.customerId);
+                        request.sender.tell(Customer.BalanceFail.of(request.customerId));
+                        return Behaviors.same();
+                    })
+                    .build();
+        }
+
+        private void acted(int customer) {
+            if (++actions[customer] == CYCLES) {
+                done.countDown();
+            }
+        }
+    }
+
+    /**
+     * 10k customers think on timers on four threads. While they do, an actor on the same threads still answers
+     * within the bound, and every customer gets through its cycles: a customer waiting for its timer holds no
+     * thread, as one sleeping on it would.
+     */
+    @Test
+    public void thinkingCustomersDoNotStarveTheirDispatcher() throws InterruptedException {
+        DispatcherSelector customers = DispatcherSelector.fromConfig("customers-dispatcher");
+        Shop shop = new Shop();
+        ActorRef<Object> shopRef = testKit.spawn(shop.behavior());
+        for (int id = 1; id <= CUSTOMERS; id++) {
+            testKit.spawn(Customer.create(id, shopRef.narrow(), shopRef.narrow(), ThinkTime.fixed(THINK_TIME),
+                    new SplittableRandom(id)), "Customer" + id, customers);
+        }
+
+        ActorRef<Ping> ping = testKit.spawn(Behaviors.receive(Ping.class)
+                .onMessage(Ping.class, request -> {
+                    request.replyTo.tell(request);
+                    return Behaviors.same();
+                })
+                .build(), "Ping", customers);
+        TestProbe<Ping> probe = testKit.createTestProbe();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        int pings = 0;
+        while (!shop.done.await(50, TimeUnit.MILLISECONDS)) {
+            assertTrue("only " + (CUSTOMERS - shop.done.getCount()) + " customers got through " + CYCLES + " cycles",
+                    System.nanoTime() - deadline < 0);
+            // the ping queues behind the customers on the same four threads
+            ping.tell(new Ping(probe.ref()));
+            probe.expectMessageClass(Ping.class, PING_BOUND);
+            pings++;
+        }
+        assertTrue("the customers were done before the first ping", pings > 0);
+    }
+
+    private static final class Ping {
+        private final ActorRef<Ping> replyTo;
+
+        private Ping(ActorRef<Ping> replyTo) {
+            this.replyTo = replyTo;
+        }
+    }
+}
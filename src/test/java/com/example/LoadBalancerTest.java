@@ -0,0 +1,151 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.javadsl.Behaviors;
+import com.typesafe.config.ConfigFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LoadBalancerTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource(ConfigFactory.load());
+
+    private static final int MACHINES = 5;
+    private static final int CUSTOMERS = 20;
+
+    /**
+     * The answers of the cash register for many customers come back in another order than the requests. Every
+     * customer is still sent to a machine with its own reservation, and the machines' reports are shared by all.
+     */
+    @Test
+    public void routesOverlappingRequestsWithTheirOwnCredit() {
+        TestProbe<CashRegister.Request> cashRegister = testKit.createTestProbe();
+        TestProbe<CoffeeMachine.GetCoffee> orders = testKit.createTestProbe();
+        ActorRef<LoadBalancer.Mixed> loadBalancer = spawn(cashRegister, orders, 1);
+        List<TestProbe<Customer.Response>> customers = customers();
+
+        for (int i = 0; i < CUSTOMERS; i++) {
+            loadBalancer.tell(new LoadBalancer.GetCoffee(customers.get(i).ref(), i + 1));
+        }
+        List<CashRegister.State> checks = new ArrayList<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            checks.add(cashRegister.expectMessageClass(CashRegister.State.class));
+        }
+        for (int i = checks.size() - 1; i >= 0; i--) {
+            CashRegister.State check = checks.get(i);
+            check.sender.tell(new LoadBalancer.CreditSuccess(check.ofWhom, check.customerId, 1000 + check.customerId));
+        }
+
+        BitSet routed = new BitSet();
+        for (CoffeeMachine.GetCoffee order : orders.receiveSeveralMessages(CUSTOMERS)) {
+            assertEquals(1000 + order.customerId, order.reservation);
+            assertEquals(customers.get(order.customerId - 1).ref(), order.sender);
+            routed.set(order.customerId);
+        }
+        assertEquals(CUSTOMERS, routed.cardinality());
+        orders.expectNoMessage(Duration.ofMillis(10));
+    }
+
+    /**
+     * A batch of balance checks carries only ids; the shards answer for their parts of it in any order, and the
+     * load balancer still answers every customer at its own reference.
+     */
+    @Test
+    public void answersEveryCustomerOfABatchByItsId() {
+        TestProbe<CashRegister.Request> cashRegister = testKit.createTestProbe();
+        TestProbe<CoffeeMachine.GetCoffee> orders = testKit.createTestProbe();
+        ActorRef<LoadBalancer.Mixed> loadBalancer = spawn(cashRegister, orders, CUSTOMERS);
+        List<TestProbe<Customer.Response>> customers = customers();
+
+        for (int i = 0; i < CUSTOMERS; i++) {
+            loadBalancer.tell(new LoadBalancer.GetCoffee(customers.get(i).ref(), i + 1));
+        }
+        CashRegister.StateBatch batch = cashRegister.expectMessageClass(CashRegister.StateBatch.class);
+        assertEquals(CUSTOMERS, batch.size());
+        // two shards answer, the second half first; odd customers have credit
+        for (int half = 1; half >= 0; half--) {
+            int from = half * CUSTOMERS / 2;
+            int[] ids = new int[CUSTOMERS / 2];
+            BitSet granted = new BitSet();
+            long[] reservations = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = batch.customerId(from + i);
+                if (ids[i] % 2 == 1) {
+                    granted.set(i);
+                    reservations[i] = 1000 + ids[i];
+                }
+            }
+            batch.sender.tell(new LoadBalancer.CreditBatch(ids, granted, reservations));
+        }
+
+        for (CoffeeMachine.GetCoffee order : orders.receiveSeveralMessages(CUSTOMERS / 2)) {
+            assertEquals(1, order.customerId % 2);
+            assertEquals(1000 + order.customerId, order.reservation);
+            assertEquals(customers.get(order.customerId - 1).ref(), order.sender);
+        }
+        for (int i = 0; i < CUSTOMERS; i++) {
+            int customerId = i + 1;
+            if (customerId % 2 == 0) {
+                assertEquals(customerId, customers.get(i).expectMessageClass(Customer.BalanceFail.class).customerId);
+            } else {
+                customers.get(i).expectNoMessage(Duration.ofMillis(10));
+            }
+        }
+        orders.expectNoMessage(Duration.ofMillis(10));
+        cashRegister.expectNoMessage(Duration.ofMillis(10));
+    }
+
+    /**
+     * Spawns a load balancer with machines which report a full supply once and hand every order to the probe.
+     */
+    private static ActorRef<LoadBalancer.Mixed> spawn(TestProbe<CashRegister.Request> cashRegister,
+                                                      TestProbe<CoffeeMachine.GetCoffee> orders, int creditBatchSize) {
+        @SuppressWarnings("unchecked")
+        ActorRef<CoffeeMachine.Request>[] machines = new ActorRef[MACHINES];
+        for (int i = 0; i < MACHINES; i++) {
+            machines[i] = testKit.spawn(Behaviors.setup(context -> Behaviors.receive(CoffeeMachine.Request.class)
+                    .onMessage(CoffeeMachine.GiveSupply.class, subscribe -> {
+                        subscribe.sender.tell(new LoadBalancer.GetSupply(context.getSelf(), 100, 0, 1.0, false, 0));
+                        return Behaviors.same();
+                    })
+                    .onMessage(CoffeeMachine.GetCoffee.class, order -> {
+                        orders.ref().tell(order);
+                        return Behaviors.same();
+                    })
+                    .build()));
+        }
+        ActorRef<LoadBalancer.Mixed> loadBalancer = testKit.spawn(LoadBalancer.create(cashRegister.ref(), machines,
+                MachineSelector.maxRemaining(), creditBatchSize, Duration.ofSeconds(1), true));
+        TestProbe<LoadBalancer.Stats> stats = testKit.createTestProbe();
+        stats.awaitAssert(() -> {
+            loadBalancer.tell(new LoadBalancer.GetStats(stats.ref()));
+            LoadBalancer.Stats snapshot = stats.receiveMessage();
+            for (int i = 0; i < MACHINES; i++) {
+                assertEquals(100, snapshot.remainingCoffee(i));
+            }
+            return null;
+        });
+        return loadBalancer;
+    }
+
+    private static List<TestProbe<Customer.Response>> customers() {
+        List<TestProbe<Customer.Response>> customers = new ArrayList<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers.add(testKit.createTestProbe());
+        }
+        return customers;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example;
+// Sewerin Kuss 201346
+// Duc Anh Le 230662
+// Janis Melon 209928
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SimulationTest {
+
+    // a simulated half hour logs hundreds of thousands of per-message DEBUG lines, the simulate task runs at INFO as well
+    private static final Logger shop = (Logger) LoggerFactory.getLogger("com.example");
+    private static Level level;
+
+    @BeforeClass
+    public static void logAtInfo() {
+        level = shop.getLevel();
+        shop.setLevel(Level.INFO);
+    }
+
+    @AfterClass
+    public static void restoreLogLevel() {
+        shop.setLevel(level);
+    }
+
+    /**
+     * Two simulations of the same seed and configuration serve the same customers at the same simulated times, so
+     * their summaries are the same apart from the wall clock; another seed gives another day.
+     */
+    @Test
+    public void repeatsExactlyWithTheSameSeed() throws InterruptedException {
+        ShopMetrics.Measurement first = Simulation.run(config(1), System.nanoTime());
+        ShopMetrics.Measurement second = Simulation.run(config(1), System.nanoTime());
+        assertTrue(first.coffees > 0);
+        assertEquals(Simulation.summary(config(1), first, 0), Simulation.summary(config(1), second, 0));
+
+        ShopMetrics.Measurement otherSeed = Simulation.run(config(2), System.nanoTime());
+        assertNotEquals(Simulation.summary(config(1), first, 0), Simulation.summary(config(1), otherSeed, 0));
+    }
+
+    /**
+     * A small shop, with few enough machines and supply that customers also wait for refills and get fails.
+     */
+    private static Config config(long seed) {
+        return ConfigFactory.parseString("coffee {\n"
+                + "  random-seed = " + seed + "\n"
+                + "  customers = 2000\n"
+                + "  customer-population-size = 1000\n"
+                + "  customer-think-time.mean = 1m\n"
+                + "  machines = 3\n"
+                + "  initial-supply = 200\n"
+                + "  replenishment { low-water-mark = 50, capacity = 200, latency = 1m, parallel-refills = 1 }\n"
+                + "  simulation { warm-up = 5m, duration = 30m, progress-interval = 0s }\n"
+                + "}").withFallback(ConfigFactory.load("simulation"));
+    }
+}